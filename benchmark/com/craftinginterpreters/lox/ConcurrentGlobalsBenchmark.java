@@ -0,0 +1,69 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs one interpreter per thread against shared concurrent globals, for 1 to 8 threads. In the
+ * read workload every thread only reads a shared global. In the update workload every thread also
+ * increments a shared counter, so they all contend on one cell, and the final count shows whether
+ * any increment was lost.
+ */
+class ConcurrentGlobalsBenchmark {
+  private static final int ITERATIONS = 500_000;
+
+  private static final String READ =
+      "{ var sum = 0; for (var i = 0; i < " + ITERATIONS + "; i = i + 1) { sum = sum + scale; } }";
+  private static final String UPDATE =
+      "{ var sum = 0; for (var i = 0; i < " + ITERATIONS + "; i = i + 1) {"
+          + " sum = sum + scale; counter = counter + 1; } }";
+
+  public static void main(String[] args) throws InterruptedException {
+    for (int round = 0; round < 3; round++) {
+      for (int threads = 1; threads <= 8; threads *= 2) {
+        run("read", READ, threads);
+        run("update", UPDATE, threads);
+      }
+      System.out.println();
+    }
+  }
+
+  private static void run(String name, String source, int threads) throws InterruptedException {
+    Environment globals = Environment.concurrent();
+    Interpreter setup = new Interpreter(ExecutionLimits.NONE, globals);
+    setup.defineGlobal("scale", 3.0);
+    setup.defineGlobal("counter", 0.0);
+
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      // Each thread needs a program of its own, since AST nodes cache the cells they resolve.
+      List<Stmt> program = new Fuser().fuse(new Parser(new Scanner(source).scanTokens()).parse());
+      Interpreter interpreter = new Interpreter(ExecutionLimits.NONE, globals);
+      Thread worker = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        interpreter.interpret(program);
+      });
+      worker.start();
+      workers.add(worker);
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) worker.join();
+    double seconds = (System.nanoTime() - begin) / 1e9;
+
+    System.out.printf("%-6s %d threads  %7.1f M iterations/s",
+        name, threads, threads * (double) ITERATIONS / seconds / 1e6);
+    if (source == UPDATE) {
+      double counter = (double) globals.slot("counter").getAcquire();
+      System.out.printf("  counter %.0f of %d", counter, threads * ITERATIONS);
+    }
+    System.out.println();
+  }
+}
@@ -0,0 +1,44 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Compares recursive descent and recursive evaluation with the explicit-stack parser and evaluator on
+ * ordinary, shallow expressions.
+ */
+class ExplicitStackBenchmark {
+  private static final int STATEMENTS = 20_000;
+  private static final int ROUNDS = 15;
+
+  public static void main(String[] args) {
+    String source = generate();
+    for (boolean explicitStack : new boolean[] {false, true, false, true}) {
+      long parseNanos = Long.MAX_VALUE;
+      long evaluateNanos = Long.MAX_VALUE;
+      for (int round = 0; round < ROUNDS; round++) {
+        List<Token> tokens = new Scanner(source).scanTokens();
+        long start = System.nanoTime();
+        List<Stmt> statements = new Parser(tokens, new ErrorReporter(), explicitStack).parse();
+        long parsed = System.nanoTime();
+        new Interpreter(ExecutionLimits.NONE, explicitStack).interpret(statements);
+        long evaluated = System.nanoTime();
+        parseNanos = Math.min(parseNanos, parsed - start);
+        evaluateNanos = Math.min(evaluateNanos, evaluated - parsed);
+      }
+      System.out.printf(
+          "%-10s parse %7.2f ms  evaluate %7.2f ms%n",
+          explicitStack ? "explicit" : "recursive", parseNanos / 1e6, evaluateNanos / 1e6);
+    }
+  }
+
+  private static String generate() {
+    StringBuilder source = new StringBuilder("var a = 1;\nvar b = 2;\nvar c = \"s\";\n");
+    for (int i = 0; i < STATEMENTS; i++) {
+      source.append("var v").append(i).append(" = (a + b * ").append(i).append(") - -a / (b + 1);\n");
+      source.append("a = a + 1 >= b == !(b < ").append(i).append(");\n");
+      source.append("a = ").append(i).append(";\n");
+      source.append("c + \"t\";\n");
+    }
+    return source.toString();
+  }
+}
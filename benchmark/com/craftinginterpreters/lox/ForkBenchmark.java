@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Runs one script against many variations of a warmed-up global state, a parameter sweep, either
+ * rebuilding the state for every run or forking it. The state is a few thousand globals; each run
+ * sets one input, reads a few globals and stores to two.
+ */
+class ForkBenchmark {
+  private static final int GLOBALS = 5_000;
+  private static final int RUNS = 10_000;
+
+  public static void main(String[] args) {
+    StringBuilder setup = new StringBuilder();
+    for (int i = 0; i < GLOBALS; i++) {
+      setup.append("var g").append(i).append(" = ").append(i).append(" * 3;\n");
+    }
+    setup.append("var total = 0; var runs = 0;\n");
+    List<Stmt> warmUp = parse(setup.toString());
+    List<Stmt> script = parse(
+        "total = g1 + g42 * rate + g4999 / 2;\n"
+            + "runs = runs + 1;\n"
+            + "var doubled = total * 2;\n");
+
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      double last = 0;
+      for (int run = 0; run < RUNS / 100; run++) {
+        Interpreter fresh = new Interpreter();
+        fresh.interpret(warmUp);
+        fresh.defineGlobal("rate", (double) run);
+        fresh.interpret(script);
+      }
+      long rebuilt = (System.nanoTime() - start) / (RUNS / 100);
+
+      Interpreter base = new Interpreter();
+      base.interpret(warmUp);
+      start = System.nanoTime();
+      for (int run = 0; run < RUNS; run++) {
+        Interpreter fork = base.fork();
+        fork.defineGlobal("rate", (double) run);
+        fork.interpret(script);
+      }
+      long forked = (System.nanoTime() - start) / RUNS;
+
+      // The base must come out of the sweep unchanged.
+      Interpreter check = base.fork();
+      check.interpret(parse("print runs;"));
+      System.out.printf(
+          "rebuilt %9.1f us/run  forked %7.2f us/run%n", rebuilt / 1e3, forked / 1e3);
+    }
+  }
+
+  private static List<Stmt> parse(String source) {
+    return new Parser(new Scanner(source).scanTokens()).parse();
+  }
+}
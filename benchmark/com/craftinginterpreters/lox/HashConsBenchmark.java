@@ -0,0 +1,73 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Parses a large generated script of the kind a code generator emits, where the same literals and
+ * the same arithmetic over a few globals repeat on every line, and reports how many expression
+ * nodes and how much retained heap hash-consing saves, along with the time the pass takes and the
+ * run time of both trees.
+ */
+class HashConsBenchmark {
+  private static final int LINES = 200_000;
+
+  public static void main(String[] args) throws InterruptedException {
+    StringBuilder builder = new StringBuilder("var rate = 2; var offset = 7; var total = 0;\n");
+    for (int i = 0; i < LINES; i++) {
+      switch (i % 4) {
+        case 0 -> builder.append("total = total + (rate * 3 + offset) * ").append(i % 16)
+            .append(";\n");
+        case 1 -> builder.append("var v").append(i % 64).append(" = rate * 3 + offset - 1;\n");
+        case 2 -> builder.append("total = total - (rate * 3 + offset) / 2;\n");
+        default -> builder.append("{ var t = rate * 3; total = total + t * 0; }\n");
+      }
+    }
+    String source = builder.toString();
+
+    for (int round = 0; round < 3; round++) {
+      long before = usedHeap();
+      List<Stmt> plain = parse(source);
+      long plainBytes = usedHeap() - before;
+      long plainRun = run(plain);
+      plain = null;
+
+      before = usedHeap();
+      List<Stmt> parsed = parse(source);
+      long start = System.nanoTime();
+      HashConser conser = new HashConser();
+      List<Stmt> interned = conser.intern(parsed);
+      long internTime = System.nanoTime() - start;
+      int nodes = conser.nodes();
+      int distinct = conser.distinct();
+      // Only the shared tree should be left to measure, not the one it came from or the table.
+      parsed = null;
+      conser = null;
+      long internedBytes = usedHeap() - before;
+      long internedRun = run(interned);
+
+      System.out.printf(
+          "nodes %,d -> %,d  heap %.1f MB -> %.1f MB  intern %d ms  run %d ms -> %d ms%n",
+          nodes, distinct, plainBytes / 1e6, internedBytes / 1e6, internTime / 1_000_000,
+          plainRun / 1_000_000, internedRun / 1_000_000);
+    }
+  }
+
+  private static List<Stmt> parse(String source) {
+    return new Fuser().fuse(new Parser(new Scanner(source).scanTokens()).parse());
+  }
+
+  private static long run(List<Stmt> statements) {
+    long start = System.nanoTime();
+    new Interpreter().interpret(statements);
+    return System.nanoTime() - start;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
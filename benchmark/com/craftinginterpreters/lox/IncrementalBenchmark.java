@@ -0,0 +1,40 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Compares a full scan and parse of a large source with incremental updates after single-character
+ * edits, like those an editor sends on every keystroke.
+ */
+class IncrementalBenchmark {
+  private static final int STATEMENTS = 50_000;
+  private static final int EDITS = 2_000;
+
+  public static void main(String[] args) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < STATEMENTS; i++) {
+      builder.append("var v").append(i).append(" = ").append(i).append(" * 2 + 1;\n");
+      builder.append("{ var w = v").append(i).append("; print w - 1; }\n");
+    }
+    String source = builder.toString();
+
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      List<Token> tokens = new Scanner(source).scanTokens();
+      new Parser(tokens).parse();
+      long full = System.nanoTime() - start;
+
+      IncrementalParser parser = new IncrementalParser(source, new ErrorReporter(), false);
+      // Retype a digit inside a block halfway through the file.
+      int offset = source.indexOf("w - 1", source.length() / 2) + 4;
+      start = System.nanoTime();
+      for (int edit = 0; edit < EDITS; edit++) {
+        parser.edit(offset, 1, String.valueOf(edit % 10), new ErrorReporter());
+      }
+      long incremental = (System.nanoTime() - start) / EDITS;
+      System.out.printf(
+          "full %8.2f ms  incremental %8.3f ms/edit  (%s)%n",
+          full / 1e6, incremental / 1e6, parser.describe());
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Times how long a large source takes to get to its first statement, parsing every block up front
+ * and with lazy blocks, when only one block in a hundred is ever run.
+ */
+class LazyBlockBenchmark {
+  private static final int BLOCKS = 20_000;
+  private static final int REACHED_EVERY = 100;
+
+  public static void main(String[] args) {
+    StringBuilder builder = new StringBuilder("var total = 0;\n");
+    for (int i = 0; i < BLOCKS; i++) {
+      boolean reached = i % REACHED_EVERY == 0;
+      builder.append(reached ? "for (var once = true; once; once = false) {\n" : "while (false) {\n");
+      for (int k = 0; k < 10; k++) {
+        builder.append("  { var v").append(k).append(" = (total + ").append(k).append(") * 2 - 1;");
+        builder.append(" total = total + v").append(k).append(" / 3; }\n");
+      }
+      builder.append("}\n");
+    }
+    String source = builder.toString();
+    List<Token> tokens = new Scanner(source).scanTokens();
+
+    for (int round = 0; round < 5; round++) {
+      for (boolean lazy : new boolean[] {false, true}) {
+        long start = System.nanoTime();
+        Parser parser = new Parser(tokens, new ErrorReporter(), false, lazy);
+        List<Stmt> statements = parser.parse();
+        long parsed = System.nanoTime() - start;
+        start = System.nanoTime();
+        new Interpreter().interpret(statements);
+        long ran = System.nanoTime() - start;
+        System.out.printf(
+            "%-6s to first statement %7.2f ms  run %7.2f ms  (%d of %d blocks parsed late)%n",
+            lazy ? "lazy" : "eager", parsed / 1e6, ran / 1e6, parser.loadedBlocks(),
+            parser.deferredBlocks());
+      }
+    }
+  }
+}
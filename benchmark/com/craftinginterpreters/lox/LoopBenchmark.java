@@ -0,0 +1,40 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Measures heap allocated per loop iteration. The first loop's body environment is reused across
+ * iterations; the second wraps the same body in an inner block, which still gets a fresh environment
+ * on every pass, for comparison.
+ */
+class LoopBenchmark {
+  private static final int ITERATIONS = 1_000_000;
+
+  private static final String REUSED =
+      "for (var i = 0; i < " + ITERATIONS + "; i = i + 1) { var a = i; var b = a; }";
+  private static final String FRESH =
+      "for (var i = 0; i < " + ITERATIONS + "; i = i + 1) { { var a = i; var b = a; } }";
+
+  public static void main(String[] args) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    for (int round = 0; round < 5; round++) {
+      for (String source : new String[] {REUSED, FRESH}) {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        Interpreter interpreter = new Interpreter();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        interpreter.interpret(statements);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        System.out.printf(
+            "%-6s %6.1f bytes/iteration  %6.1f ns/iteration%n",
+            source == REUSED ? "reused" : "fresh",
+            (double) allocated / ITERATIONS,
+            (double) elapsed / ITERATIONS);
+      }
+    }
+  }
+}
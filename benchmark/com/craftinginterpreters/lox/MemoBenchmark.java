@@ -0,0 +1,36 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Times a loop that keeps recomputing pure expressions over variables it never changes, with and
+ * without memoization.
+ */
+class MemoBenchmark {
+  private static final int ITERATIONS = 1_000_000;
+
+  private static final String SOURCE =
+      "var scale = 3; var offset = 7; var total = 0;\n"
+          + "for (var i = 0; i < " + ITERATIONS + "; i = i + 1) {\n"
+          + "  var norm = (scale * scale + offset * offset) / (scale + offset) - scale * offset;\n"
+          + "  var bias = -(offset - scale) * (offset + scale) / 2;\n"
+          + "  total = total + norm * bias;\n"
+          + "}\n";
+
+  public static void main(String[] args) {
+    for (int round = 0; round < 5; round++) {
+      for (boolean memoize : new boolean[] {false, true}) {
+        List<Stmt> statements = new Fuser().fuse(new Parser(new Scanner(SOURCE).scanTokens()).parse());
+        Memoizer memoizer = new Memoizer();
+        if (memoize) statements = memoizer.memoize(statements);
+        long start = System.nanoTime();
+        new Interpreter().interpret(statements);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf(
+            "%-10s %6.1f ns/iteration%n",
+            memoize ? "memoized" : "plain", (double) elapsed / ITERATIONS);
+        if (memoize && round == 4) memoizer.report(System.out);
+      }
+    }
+  }
+}
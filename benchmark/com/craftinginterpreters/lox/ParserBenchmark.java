@@ -0,0 +1,37 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Measures parse throughput in tokens per microsecond on a large generated program, with both the
+ * recursive and the explicit-stack expression parsers. Most operands are bare literals and
+ * variables, which is where per-level recursion used to cost the most.
+ */
+class ParserBenchmark {
+  private static final int STATEMENTS = 200_000;
+
+  public static void main(String[] args) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < STATEMENTS; i++) {
+      switch (i % 4) {
+        case 0 -> builder.append("var v").append(i).append(" = ").append(i).append(";\n");
+        case 1 -> builder.append("v").append(i - 1).append(" = v").append(i - 1)
+            .append(" * 2 + 1 - v").append(i - 1).append(" / 3;\n");
+        case 2 -> builder.append("print v").append(i - 2).append(" >= 10 == !false;\n");
+        default -> builder.append("{ var w = [v").append(i - 3).append(", 2]; print w[0]; }\n");
+      }
+    }
+    List<Token> tokens = new Scanner(builder.toString()).scanTokens();
+
+    for (int round = 0; round < 10; round++) {
+      for (boolean explicitStack : new boolean[] {false, true}) {
+        long start = System.nanoTime();
+        new Parser(tokens, new ErrorReporter(), explicitStack).parse();
+        double micros = (System.nanoTime() - start) / 1e3;
+        System.out.printf(
+            "%-9s %6.1f tokens/us  (%d tokens)%n",
+            explicitStack ? "explicit" : "recursive", tokens.size() / micros, tokens.size());
+      }
+    }
+  }
+}
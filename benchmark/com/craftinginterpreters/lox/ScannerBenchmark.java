@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Measures scanning throughput in MB/s of source on a generated program mixing keywords,
+ * identifiers, numbers, strings, operators, indentation and comments.
+ */
+class ScannerBenchmark {
+  private static final int LINES = 400_000;
+
+  public static void main(String[] args) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < LINES; i++) {
+      switch (i % 5) {
+        case 0 -> builder.append("// step ").append(i).append(" of the generated program\n");
+        case 1 -> builder.append("var value").append(i).append(" = ").append(i).append(".5 * 2;\n");
+        case 2 -> builder.append("while (value").append(i - 1).append(" >= 10) {\n");
+        case 3 -> builder.append("    value").append(i - 2).append(" = value").append(i - 2)
+            .append(" - 1; print \"left \" + true;\n");
+        default -> builder.append("}\n\n");
+      }
+    }
+    String source = builder.toString();
+    double megabytes = source.length() / (1024.0 * 1024.0);
+
+    for (int round = 0; round < 10; round++) {
+      long start = System.nanoTime();
+      int tokens = new Scanner(source).scanTokens().size();
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.printf(
+          "%6.1f MB/s  (%.1f MB, %d tokens)%n", megabytes / seconds, megabytes, tokens);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Runs the same loop through the visitor tree and through the sealed record tree, whose dispatch is
+ * a chain of type tests. The loop works on block locals, which neither path caches, and mixes
+ * enough node kinds that evaluate() sees many receiver types.
+ */
+class SealedDispatchBenchmark {
+  private static final int ITERATIONS = 1_000_000;
+
+  private static final String SOURCE =
+      "{\n"
+          + "  var total = 0; var items = [1, 2, 3, 4];\n"
+          + "  for (var i = 0; i < " + ITERATIONS + "; i = i + 1) {\n"
+          + "    var x = (i + 1) * 2 - items[2];\n"
+          + "    var flag = !(x < 10) == true;\n"
+          + "    total = total + -x / 3 + (x - 1) * (x + 1);\n"
+          + "  }\n"
+          + "}\n";
+
+  public static void main(String[] args) {
+    List<Stmt> statements = new Fuser().fuse(new Parser(new Scanner(SOURCE).scanTokens()).parse());
+    List<StmtNode> nodes = new NodeConverter().convert(statements);
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      new Interpreter().interpret(statements);
+      long visitor = System.nanoTime() - start;
+      start = System.nanoTime();
+      new Interpreter().interpretNodes(nodes);
+      long sealed = System.nanoTime() - start;
+      System.out.printf(
+          "visitor %6.1f ns/iteration  sealed %6.1f ns/iteration%n",
+          (double) visitor / ITERATIONS, (double) sealed / ITERATIONS);
+    }
+  }
+}
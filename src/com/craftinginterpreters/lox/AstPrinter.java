@@ -37,6 +37,56 @@ public class AstPrinter implements Expr.Visitor<String> {
     return parenthesize("var " + expr.name.lexeme + " " + expr.value.accept(this));
   }
 
+  @Override
+  public String visitVarLiteralExpr(Expr.VarLiteral expr) {
+    return "(" + expr.operator.lexeme + " (var " + expr.name.lexeme + ") " + literal(expr.value) + ")";
+  }
+
+  @Override
+  public String visitVarVarExpr(Expr.VarVar expr) {
+    return "(" + expr.operator.lexeme + " (var " + expr.left.lexeme + ") (var " + expr.right.lexeme + "))";
+  }
+
+  @Override
+  public String visitAddAssignExpr(Expr.AddAssign expr) {
+    return "(var " + expr.name.lexeme + " (" + expr.operator.lexeme + " (var " + expr.source.lexeme + ") "
+        + literal(expr.value) + "))";
+  }
+
+  @Override
+  public String visitCallExpr(Expr.Call expr) {
+    StringBuilder builder = new StringBuilder("(call ").append(expr.callee.accept(this));
+    for (Expr argument : expr.arguments) {
+      builder.append(" ").append(argument.accept(this));
+    }
+    return builder.append(")").toString();
+  }
+
+  @Override
+  public String visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+    return parenthesize("array", expr.elements.toArray(new Expr[0]));
+  }
+
+  @Override
+  public String visitIndexExpr(Expr.Index expr) {
+    return parenthesize("index", expr.object, expr.index);
+  }
+
+  @Override
+  public String visitIndexSetExpr(Expr.IndexSet expr) {
+    return parenthesize("index=", expr.object, expr.index, expr.value);
+  }
+
+  @Override
+  public String visitMemoExpr(Expr.Memo expr) {
+    return parenthesize("memo", expr.expression);
+  }
+
+  private String literal(Object value) {
+    if (value == null) return "nil";
+    return value.toString();
+  }
+
   private String parenthesize(String name, Expr... expressions) {
     StringBuilder builder = new StringBuilder();
 
@@ -0,0 +1,666 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes statements whose effects can never be observed.
+ *
+ * <p>A forward pass tracks which variables are definitely defined and which hold numbers or strings,
+ * and uses that to mark the expressions that can neither have a side effect nor raise a {@link
+ * RuntimeError}. A backward liveness pass then drops:
+ *
+ * <ul>
+ *   <li>{@code var} declarations whose variable is never read afterwards (an initializer that could
+ *       fail is kept as an expression statement),
+ *   <li>assignments to such variables, which are reduced to their value,
+ *   <li>expression statements that are safe to skip.
+ * </ul>
+ *
+ * Liveness is tracked by name within each scope. Going backward through a block, the first
+ * declaration of a name ends its local binding, so the statements before it see the liveness of the
+ * binding the name refers to outside the block. Top-level declarations are only dead within one
+ * source, so this must not run on REPL lines.
+ */
+class DeadCodeEliminator {
+    private enum Kind {
+        NUMBER,
+        STRING,
+        UNKNOWN
+    }
+
+    private final Set<Expr> safe = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Expr.Assign> definedTargets = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int removedDeclarations = 0;
+    private int removedExpressions = 0;
+    private int removedStores = 0;
+
+    List<Stmt> eliminate(List<Stmt> statements) {
+        new Analyzer().analyze(statements);
+        return new Sweeper().sweep(statements, new HashSet<>());
+    }
+
+    int removedDeclarations() {
+        return removedDeclarations;
+    }
+
+    int removedExpressions() {
+        return removedExpressions;
+    }
+
+    int removedStores() {
+        return removedStores;
+    }
+
+    private class Analyzer implements Expr.Visitor<Kind>, Stmt.Visitor<Void> {
+        private final List<Map<String, Kind>> scopes = new ArrayList<>();
+
+        void analyze(List<Stmt> statements) {
+            scopes.add(new HashMap<>());
+            for (Stmt stmt : statements) {
+                stmt.accept(this);
+            }
+            scopes.remove(scopes.size() - 1);
+        }
+
+        private Kind kind(Expr expr) {
+            return expr.accept(this);
+        }
+
+        private Map<String, Kind> scopeOf(String name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                if (scopes.get(i).containsKey(name)) return scopes.get(i);
+            }
+            return null;
+        }
+
+        @Override
+        public Kind visitBinaryExpr(Expr.Binary expr) {
+            Kind left = kind(expr.left);
+            Kind right = kind(expr.right);
+            boolean operandsSafe = safe.contains(expr.left) && safe.contains(expr.right);
+            boolean numbers = left == Kind.NUMBER && right == Kind.NUMBER;
+            switch (expr.operator.type) {
+                case PLUS -> {
+                    boolean strings = left == Kind.STRING && right == Kind.STRING;
+                    if (operandsSafe && (numbers || strings)) safe.add(expr);
+                    if (numbers) return Kind.NUMBER;
+                    if (strings) return Kind.STRING;
+                    return Kind.UNKNOWN;
+                }
+                case MINUS, STAR, SLASH -> {
+                    if (operandsSafe && numbers) safe.add(expr);
+                    return Kind.NUMBER;
+                }
+                case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> {
+                    if (operandsSafe && numbers) safe.add(expr);
+                    return Kind.UNKNOWN;
+                }
+                default -> {
+                    if (operandsSafe) safe.add(expr);
+                    return Kind.UNKNOWN;
+                }
+            }
+        }
+
+        @Override
+        public Kind visitGroupingExpr(Expr.Grouping expr) {
+            Kind kind = kind(expr.expression);
+            if (safe.contains(expr.expression)) safe.add(expr);
+            return kind;
+        }
+
+        @Override
+        public Kind visitLiteralExpr(Expr.Literal expr) {
+            safe.add(expr);
+            if (expr.value instanceof Double) return Kind.NUMBER;
+            if (expr.value instanceof String) return Kind.STRING;
+            return Kind.UNKNOWN;
+        }
+
+        @Override
+        public Kind visitUnaryExpr(Expr.Unary expr) {
+            Kind right = kind(expr.right);
+            boolean rightSafe = safe.contains(expr.right);
+            switch (expr.operator.type) {
+                case MINUS -> {
+                    if (rightSafe && right == Kind.NUMBER) safe.add(expr);
+                    return Kind.NUMBER;
+                }
+                default -> {
+                    if (rightSafe) safe.add(expr);
+                    return Kind.UNKNOWN;
+                }
+            }
+        }
+
+        @Override
+        public Kind visitAssignExpr(Expr.Assign expr) {
+            Kind value = kind(expr.value);
+            Map<String, Kind> scope = scopeOf(expr.name.lexeme);
+            if (scope != null) {
+                scope.put(expr.name.lexeme, value);
+                definedTargets.add(expr);
+            }
+            return value;
+        }
+
+        @Override
+        public Kind visitVariableExpr(Expr.Variable expr) {
+            Map<String, Kind> scope = scopeOf(expr.name.lexeme);
+            if (scope == null) return Kind.UNKNOWN;
+            safe.add(expr);
+            return scope.get(expr.name.lexeme);
+        }
+
+        @Override
+        public Kind visitVarLiteralExpr(Expr.VarLiteral expr) {
+            return Kind.UNKNOWN;
+        }
+
+        @Override
+        public Kind visitVarVarExpr(Expr.VarVar expr) {
+            return Kind.UNKNOWN;
+        }
+
+        @Override
+        public Kind visitAddAssignExpr(Expr.AddAssign expr) {
+            Map<String, Kind> scope = scopeOf(expr.name.lexeme);
+            if (scope != null) scope.put(expr.name.lexeme, Kind.UNKNOWN);
+            return Kind.UNKNOWN;
+        }
+
+        // Host functions can do anything, so a call is never safe to drop.
+        @Override
+        public Kind visitCallExpr(Expr.Call expr) {
+            kind(expr.callee);
+            for (Expr argument : expr.arguments) {
+                kind(argument);
+            }
+            return Kind.UNKNOWN;
+        }
+
+        @Override
+        public Kind visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+            boolean elementsSafe = true;
+            for (Expr element : expr.elements) {
+                kind(element);
+                if (!safe.contains(element)) elementsSafe = false;
+            }
+            if (elementsSafe) safe.add(expr);
+            return Kind.UNKNOWN;
+        }
+
+        // Indexing can fail on a bad index, and a store is visible through every alias of the array.
+        @Override
+        public Kind visitIndexExpr(Expr.Index expr) {
+            kind(expr.object);
+            kind(expr.index);
+            return Kind.UNKNOWN;
+        }
+
+        @Override
+        public Kind visitIndexSetExpr(Expr.IndexSet expr) {
+            kind(expr.object);
+            kind(expr.index);
+            return kind(expr.value);
+        }
+
+        @Override
+        public Kind visitMemoExpr(Expr.Memo expr) {
+            Kind kind = kind(expr.expression);
+            if (safe.contains(expr.expression)) safe.add(expr);
+            return kind;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            analyze(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            kind(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintExprStmt(Stmt.PrintExpr stmt) {
+            kind(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            Kind kind = stmt.initializer == null ? Kind.UNKNOWN : kind(stmt.initializer);
+            scopes.get(scopes.size() - 1).put(stmt.name.lexeme, kind);
+            return null;
+        }
+
+        // A loop may run any number of times, so whatever it assigns has an unknown kind both
+        // throughout the loop and after it.
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            Set<String> writes = new Names().of(stmt).writes;
+            forget(writes);
+            kind(stmt.condition);
+            stmt.body.accept(this);
+            forget(writes);
+            return null;
+        }
+
+        @Override
+        public Void visitForStmt(Stmt.For stmt) {
+            scopes.add(new HashMap<>());
+            if (stmt.initializer != null) stmt.initializer.accept(this);
+            Set<String> writes = new Names().of(stmt).writes;
+            forget(writes);
+            if (stmt.condition != null) kind(stmt.condition);
+            stmt.body.accept(this);
+            if (stmt.increment != null) kind(stmt.increment);
+            forget(writes);
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+
+        private void forget(Set<String> names) {
+            for (String name : names) {
+                Map<String, Kind> scope = scopeOf(name);
+                if (scope != null) scope.put(name, Kind.UNKNOWN);
+            }
+        }
+    }
+
+    private class Sweeper implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+        // Names read after the statement currently being swept.
+        private Set<String> live;
+        // The outermost assignment of the expression being rewritten and the names live after it.
+        private Expr root;
+        private Set<String> liveAfterRoot;
+
+        List<Stmt> sweep(List<Stmt> statements, Set<String> liveOut) {
+            Set<String> outer = live;
+            live = liveOut;
+            // Until a name is declared here, it names the binding outside, which nothing after the
+            // declaration can touch. So before the declaration, that binding is live if it is live
+            // on exit or the declaration's own initializer reads it.
+            Set<String> liveAtExit = new HashSet<>(liveOut);
+            Set<String> declared = new HashSet<>();
+            boolean[] firstDeclaration = new boolean[statements.size()];
+            for (int i = 0; i < statements.size(); i++) {
+                if (statements.get(i) instanceof Stmt.Var) {
+                    firstDeclaration[i] = declared.add(((Stmt.Var) statements.get(i)).name.lexeme);
+                }
+            }
+            List<Stmt> kept = new ArrayList<>(statements.size());
+            for (int i = statements.size() - 1; i >= 0; i--) {
+                Stmt stmt = statements.get(i).accept(this);
+                if (stmt != null) kept.add(stmt);
+                if (firstDeclaration[i]) {
+                    String name = ((Stmt.Var) statements.get(i)).name.lexeme;
+                    if (liveAtExit.contains(name)) live.add(name);
+                }
+            }
+            Collections.reverse(kept);
+            live = outer;
+            return kept;
+        }
+
+        private Expr sweepExpr(Expr expr) {
+            Expr swept = rewrite(expr);
+            live.addAll(new Names().readsOf(swept));
+            return swept;
+        }
+
+        // Drops dead stores inside the expression. Names it reads count as live for its nested stores;
+        // the outermost store happens last, so only what is read after the statement matters for it.
+        private Expr rewrite(Expr expr) {
+            Set<String> after = live;
+            root = expr;
+            liveAfterRoot = after;
+            live = new HashSet<>(after);
+            live.addAll(new Names().readsOf(expr));
+            Expr rewritten = expr.accept(this);
+            live = after;
+            root = null;
+            return rewritten;
+        }
+
+        @Override
+        public Stmt visitBlockStmt(Stmt.Block stmt) {
+            Set<String> inner = new HashSet<>(live);
+            List<Stmt> statements = sweep(stmt.statements, inner);
+            // Declarations inside the block do not kill names that are live after it.
+            live.addAll(inner);
+            return new Stmt.Block(stmt.first, statements);
+        }
+
+        @Override
+        public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+            if (safe.contains(stmt.expr)) {
+                removedExpressions++;
+                return null;
+            }
+            Expr expr = rewrite(stmt.expr);
+            if (safe.contains(expr)) {
+                removedExpressions++;
+                return null;
+            }
+            live.addAll(new Names().readsOf(expr));
+            if (expr == stmt.expr) return stmt;
+            return new Stmt.Expression(stmt.first, expr);
+        }
+
+        @Override
+        public Stmt visitPrintExprStmt(Stmt.PrintExpr stmt) {
+            Expr expr = sweepExpr(stmt.expr);
+            if (expr == stmt.expr) return stmt;
+            return new Stmt.PrintExpr(stmt.first, expr);
+        }
+
+        @Override
+        public Stmt visitVarStmt(Stmt.Var stmt) {
+            if (live.remove(stmt.name.lexeme)) {
+                if (stmt.initializer == null) return stmt;
+                Expr initializer = sweepExpr(stmt.initializer);
+                if (initializer == stmt.initializer) return stmt;
+                return new Stmt.Var(stmt.first, stmt.name, initializer);
+            }
+            removedDeclarations++;
+            if (stmt.initializer == null || safe.contains(stmt.initializer)) return null;
+            return new Stmt.Expression(stmt.first, sweepExpr(stmt.initializer));
+        }
+
+        // Everything a loop reads is treated as live for the whole loop, which covers the values that
+        // flow from one iteration into the next. Names it assigns stay live too: the condition and
+        // increment are not rewritten, so their targets must keep their declarations.
+        @Override
+        public Stmt visitWhileStmt(Stmt.While stmt) {
+            Set<String> loopLive = new HashSet<>(live);
+            loopLive.addAll(loopNames(stmt));
+            Stmt body = sweepBody(stmt.body, loopLive);
+            live.addAll(loopLive);
+            return new Stmt.While(stmt.first, stmt.condition, body);
+        }
+
+        @Override
+        public Stmt visitForStmt(Stmt.For stmt) {
+            Set<String> loopLive = new HashSet<>(live);
+            loopLive.addAll(loopNames(stmt));
+            Stmt body = sweepBody(stmt.body, loopLive);
+            Stmt initializer = stmt.initializer;
+            if (initializer != null) {
+                Set<String> outer = live;
+                live = new HashSet<>(loopLive);
+                initializer = initializer.accept(this);
+                live = outer;
+            }
+            live.addAll(loopLive);
+            return new Stmt.For(stmt.first, initializer, stmt.condition, stmt.increment, body);
+        }
+
+        private Set<String> loopNames(Stmt loop) {
+            Names names = new Names().of(loop);
+            names.reads.addAll(names.writes);
+            return names.reads;
+        }
+
+        private Stmt sweepBody(Stmt body, Set<String> loopLive) {
+            Set<String> outer = live;
+            live = new HashSet<>(loopLive);
+            Stmt swept = body.accept(this);
+            live = outer;
+            return swept != null ? swept : new Stmt.Block(body.first, new ArrayList<>());
+        }
+
+        @Override
+        public Expr visitBinaryExpr(Expr.Binary expr) {
+            Expr left = expr.left.accept(this);
+            Expr right = expr.right.accept(this);
+            if (left == expr.left && right == expr.right) return expr;
+            return new Expr.Binary(left, expr.operator, right);
+        }
+
+        @Override
+        public Expr visitGroupingExpr(Expr.Grouping expr) {
+            Expr inner = expr.expression.accept(this);
+            if (inner == expr.expression) return expr;
+            return new Expr.Grouping(inner);
+        }
+
+        @Override
+        public Expr visitLiteralExpr(Expr.Literal expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitUnaryExpr(Expr.Unary expr) {
+            Expr right = expr.right.accept(this);
+            if (right == expr.right) return expr;
+            return new Expr.Unary(expr.operator, right);
+        }
+
+        @Override
+        public Expr visitAssignExpr(Expr.Assign expr) {
+            Set<String> liveAfterStore = expr == root ? liveAfterRoot : live;
+            Expr value = expr.value.accept(this);
+            // Assigning an undefined variable raises an error, so only stores to a known variable go.
+            if (!liveAfterStore.contains(expr.name.lexeme) && definedTargets.contains(expr)) {
+                removedStores++;
+                return value;
+            }
+            if (value == expr.value) return expr;
+            return new Expr.Assign(expr.name, value);
+        }
+
+        @Override
+        public Expr visitVariableExpr(Expr.Variable expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitVarLiteralExpr(Expr.VarLiteral expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitVarVarExpr(Expr.VarVar expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitAddAssignExpr(Expr.AddAssign expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitCallExpr(Expr.Call expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitIndexExpr(Expr.Index expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitIndexSetExpr(Expr.IndexSet expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitMemoExpr(Expr.Memo expr) {
+            return expr;
+        }
+    }
+
+    // Collects the names an expression or statement reads and assigns.
+    private static class Names implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final Set<String> reads = new HashSet<>();
+        private final Set<String> writes = new HashSet<>();
+
+        Set<String> readsOf(Expr expr) {
+            expr.accept(this);
+            return reads;
+        }
+
+        Names of(Stmt stmt) {
+            stmt.accept(this);
+            return this;
+        }
+
+        private void add(Expr expr) {
+            if (expr != null) expr.accept(this);
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            writes.add(expr.name.lexeme);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            reads.add(expr.name.lexeme);
+            return null;
+        }
+
+        @Override
+        public Void visitVarLiteralExpr(Expr.VarLiteral expr) {
+            reads.add(expr.name.lexeme);
+            return null;
+        }
+
+        @Override
+        public Void visitVarVarExpr(Expr.VarVar expr) {
+            reads.add(expr.left.lexeme);
+            reads.add(expr.right.lexeme);
+            return null;
+        }
+
+        @Override
+        public Void visitAddAssignExpr(Expr.AddAssign expr) {
+            reads.add(expr.source.lexeme);
+            writes.add(expr.name.lexeme);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            expr.callee.accept(this);
+            for (Expr argument : expr.arguments) {
+                argument.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+            for (Expr element : expr.elements) {
+                element.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            expr.object.accept(this);
+            expr.index.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexSetExpr(Expr.IndexSet expr) {
+            expr.object.accept(this);
+            expr.index.accept(this);
+            expr.value.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitMemoExpr(Expr.Memo expr) {
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            for (Stmt inner : stmt.statements) {
+                inner.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            add(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintExprStmt(Stmt.PrintExpr stmt) {
+            add(stmt.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            add(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            add(stmt.condition);
+            stmt.body.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitForStmt(Stmt.For stmt) {
+            if (stmt.initializer != null) stmt.initializer.accept(this);
+            add(stmt.condition);
+            add(stmt.increment);
+            stmt.body.accept(this);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read/write dependencies between top-level statements. Statement {@code j} depends on an earlier
+ * statement {@code i} when one of them writes a global the other reads or writes, so any order that
+ * respects the edges gives every statement the same globals a sequential run would.
+ *
+ * <p>Effects that are not on a named global are tracked through pseudo-variables: {@link #HEAP} for
+ * array elements, which can be reached through any alias, and {@link #HOST} for host function calls,
+ * which may have side effects of their own.
+ *
+ * <p>A statement that calls a host function also depends on every earlier statement, since any of
+ * them may fail or never finish, and a sequential run would then never make the call. It waits
+ * directly for the statements since the previous such statement and for that statement, which has
+ * waited for everything before it.
+ */
+class DependencyGraph {
+    // Neither name is a valid identifier, so they cannot collide with a global.
+    static final String HEAP = "[heap]";
+    static final String HOST = "[host]";
+
+    private final int[][] predecessors;
+    private final int[] levels;
+    private final Set<String> declaredGlobals;
+
+    private DependencyGraph(int[][] predecessors, int[] levels, Set<String> declaredGlobals) {
+        this.predecessors = predecessors;
+        this.levels = levels;
+        this.declaredGlobals = declaredGlobals;
+    }
+
+    static DependencyGraph of(List<Stmt> statements) {
+        int count = statements.size();
+        int[][] predecessors = new int[count][];
+        int[] levels = new int[count];
+        Set<String> declaredGlobals = new LinkedHashSet<>();
+
+        Map<String, Integer> lastWriter = new HashMap<>();
+        Map<String, List<Integer>> readersSinceWrite = new HashMap<>();
+        // stamp[i] == j + 1 marks i as already recorded as a predecessor of j.
+        int[] stamp = new int[count];
+        List<Integer> edges = new ArrayList<>();
+        // The last statement that calls a host function, or -1.
+        int lastCall = -1;
+        for (int j = 0; j < count; j++) {
+            Effects effects = new Effects();
+            effects.top(statements.get(j));
+            declaredGlobals.addAll(effects.declared);
+
+            edges.clear();
+            for (String name : effects.reads) {
+                addEdge(lastWriter.get(name), j, stamp, edges);
+            }
+            for (String name : effects.writes) {
+                addEdge(lastWriter.get(name), j, stamp, edges);
+                for (int reader : readersSinceWrite.getOrDefault(name, List.of())) {
+                    addEdge(reader, j, stamp, edges);
+                }
+            }
+            if (effects.writes.contains(HOST)) {
+                for (int i = Math.max(lastCall, 0); i < j; i++) {
+                    addEdge(i, j, stamp, edges);
+                }
+                lastCall = j;
+            }
+            for (String name : effects.reads) {
+                readersSinceWrite.computeIfAbsent(name, key -> new ArrayList<>()).add(j);
+            }
+            for (String name : effects.writes) {
+                lastWriter.put(name, j);
+                readersSinceWrite.remove(name);
+            }
+
+            int[] incoming = new int[edges.size()];
+            int level = 0;
+            for (int k = 0; k < incoming.length; k++) {
+                incoming[k] = edges.get(k);
+                level = Math.max(level, levels[incoming[k]] + 1);
+            }
+            predecessors[j] = incoming;
+            levels[j] = level;
+        }
+        return new DependencyGraph(predecessors, levels, declaredGlobals);
+    }
+
+    private static void addEdge(Integer from, int to, int[] stamp, List<Integer> edges) {
+        if (from == null || from == to || stamp[from] == to + 1) return;
+        stamp[from] = to + 1;
+        edges.add(from);
+    }
+
+    int size() {
+        return predecessors.length;
+    }
+
+    /** Indexes of the earlier statements that statement {@code index} has to wait for. */
+    int[] predecessors(int index) {
+        return predecessors[index];
+    }
+
+    /** Globals declared by a top-level {@code var}, in order of first declaration. */
+    Set<String> declaredGlobals() {
+        return declaredGlobals;
+    }
+
+    /** Length of the longest dependency chain, in statements. */
+    int criticalPath() {
+        int longest = 0;
+        for (int level : levels) {
+            longest = Math.max(longest, level + 1);
+        }
+        return longest;
+    }
+
+    /** Most statements that share one position on their longest chain and can all run at once. */
+    int widestLevel() {
+        int[] widths = new int[criticalPath()];
+        int widest = 0;
+        for (int level : levels) {
+            widest = Math.max(widest, ++widths[level]);
+        }
+        return widest;
+    }
+
+    // Collects the globals one top-level statement reads and writes. Names declared in a nested scope
+    // shadow the global from the point of their declaration, the same way the interpreter resolves
+    // them at run time.
+    private static class Effects implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        final Set<String> reads = new HashSet<>();
+        final Set<String> writes = new HashSet<>();
+        final Set<String> declared = new HashSet<>();
+        private final List<Set<String>> scopes = new ArrayList<>();
+
+        void top(Stmt stmt) {
+            stmt.accept(this);
+        }
+
+        private void read(Token name) {
+            if (isGlobal(name.lexeme)) reads.add(name.lexeme);
+        }
+
+        private void write(Token name) {
+            if (isGlobal(name.lexeme)) writes.add(name.lexeme);
+        }
+
+        private boolean isGlobal(String name) {
+            for (Set<String> scope : scopes) {
+                if (scope.contains(name)) return false;
+            }
+            return true;
+        }
+
+        private void scoped(List<Stmt> statements) {
+            scopes.add(new HashSet<>());
+            for (Stmt stmt : statements) {
+                stmt.accept(this);
+            }
+            scopes.remove(scopes.size() - 1);
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            expr.left.accept(this);
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            expr.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            expr.value.accept(this);
+            write(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            read(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitVarLiteralExpr(Expr.VarLiteral expr) {
+            read(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitVarVarExpr(Expr.VarVar expr) {
+            read(expr.left);
+            read(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitAddAssignExpr(Expr.AddAssign expr) {
+            read(expr.source);
+            write(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            expr.callee.accept(this);
+            for (Expr argument : expr.arguments) {
+                argument.accept(this);
+            }
+            reads.add(HEAP);
+            writes.add(HOST);
+            return null;
+        }
+
+        @Override
+        public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+            for (Expr element : expr.elements) {
+                element.accept(this);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            expr.object.accept(this);
+            expr.index.accept(this);
+            reads.add(HEAP);
+            return null;
+        }
+
+        @Override
+        public Void visitIndexSetExpr(Expr.IndexSet expr) {
+            expr.object.accept(this);
+            expr.index.accept(this);
+            expr.value.accept(this);
+            writes.add(HEAP);
+            return null;
+        }
+
+        @Override
+        public Void visitMemoExpr(Expr.Memo expr) {
+            expr.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            // Effects are only known once a skipped body is parsed, so it is parsed now rather than
+            // by a worker. A body with errors reports them here and fails when it runs.
+            if (stmt.deferred != null) stmt.deferred.load(stmt);
+            scoped(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            stmt.expr.accept(this);
+            return null;
+        }
+
+        // Printing an array reads its elements.
+        @Override
+        public Void visitPrintExprStmt(Stmt.PrintExpr stmt) {
+            stmt.expr.accept(this);
+            reads.add(HEAP);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            if (stmt.initializer != null) stmt.initializer.accept(this);
+            if (scopes.isEmpty()) {
+                writes.add(stmt.name.lexeme);
+                declared.add(stmt.name.lexeme);
+            } else {
+                scopes.get(scopes.size() - 1).add(stmt.name.lexeme);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            stmt.condition.accept(this);
+            stmt.body.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitForStmt(Stmt.For stmt) {
+            scopes.add(new HashSet<>());
+            if (stmt.initializer != null) stmt.initializer.accept(this);
+            if (stmt.condition != null) stmt.condition.accept(this);
+            stmt.body.accept(this);
+            if (stmt.increment != null) stmt.increment.accept(this);
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+    }
+}
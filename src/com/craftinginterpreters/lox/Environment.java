@@ -1,10 +1,15 @@
 package com.craftinginterpreters.lox;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Environment {
   final Environment enclosing;
+  // Bytes this environment holds, as estimated by the interpreter's MemoryUsage.
+  long retainedBytes = 0;
 
   Environment() {
     enclosing = null;
@@ -14,29 +19,184 @@ public class Environment {
     this.enclosing = enclosing;
   }
 
-  private final Map<String, Object> values = new HashMap<>();
+  /**
+   * Mutable slot holding one variable. A global is defined into the same cell for the lifetime of its
+   * environment, so AST nodes can cache the cell and later reads become a single field load.
+   */
+  static final class Cell {
+    final Environment owner;
+    Object value;
+    // Cleared by reset(), so a reused loop body environment starts out without its variables.
+    boolean defined = true;
+    // Bumped on every store, so a memoized expression can tell whether the value it read changed.
+    long version = 0;
 
-  void define(String name, Object value) {
-    values.put(name, value);
+    private static final VarHandle VALUE;
+    private static final VarHandle VERSION;
+
+    static {
+      try {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        VALUE = lookup.findVarHandle(Cell.class, "value", Object.class);
+        VERSION = lookup.findVarHandle(Cell.class, "version", long.class);
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+
+    Cell(Environment owner, Object value) {
+      this.owner = owner;
+      this.value = value;
+    }
+
+    // The atomic accessors below are for cells of concurrent globals, which other threads store to.
+
+    Object getAcquire() {
+      return VALUE.getAcquire(this);
+    }
+
+    Object getAndSet(Object value) {
+      return VALUE.getAndSet(this, value);
+    }
+
+    boolean compareAndSet(Object expected, Object value) {
+      return VALUE.compareAndSet(this, expected, value);
+    }
+
+    void bumpVersion() {
+      VERSION.getAndAdd(this, 1L);
+    }
   }
 
-  Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
+  private Map<String, Cell> values = new HashMap<>();
+  // Replaces values in a global environment that has been forked or was created by fork(). The map
+  // is shared with the other environments forked from the same base, and holds cells owned by
+  // whichever of them stored to the variable last.
+  private PersistentMap<Cell> shared;
+  // Set once this environment has been forked, after which its cells are shared and never stored to.
+  private boolean frozen = false;
+  // Set on globals made by concurrent(), whose values map is a ConcurrentHashMap.
+  private boolean concurrent = false;
+
+  /**
+   * A global environment that interpreters on many threads can share, each running its own program
+   * against it. Names live in a {@link ConcurrentHashMap}, so defining one locks only its bin and
+   * looking one up takes no lock at all. Once defined, a name keeps its cell, and the interpreters
+   * read, store and update the value in it atomically through {@link Cell#getAcquire}, {@link
+   * Cell#getAndSet} and {@link Cell#compareAndSet}. Such an environment cannot be forked.
+   */
+  static Environment concurrent() {
+    Environment globals = new Environment();
+    globals.values = new ConcurrentHashMap<>();
+    globals.concurrent = true;
+    return globals;
+  }
+
+  boolean isConcurrent() {
+    return concurrent;
+  }
+
+  /**
+   * A global environment whose variables start out as this one's, for running against many
+   * variations of one warmed-up state. The first fork makes this environment read-only and moves its
+   * variables into a {@link PersistentMap}, in one pass. Every later fork is O(1), since all of them
+   * share that map. A fork only pays for the variables it stores to, each of which gets a cell of its
+   * own through {@link #adopt}. Only variables are copied on write: an array a variable holds is
+   * the same array in every fork.
+   */
+  Environment fork() {
+    if (enclosing != null) throw new IllegalStateException("Only globals can be forked.");
+    if (concurrent) throw new IllegalStateException("Concurrent globals cannot be forked.");
+    if (!frozen) {
+      if (values != null) {
+        shared = PersistentMap.empty();
+        values.forEach((name, cell) -> shared = shared.put(name, cell));
+        values = null;
+      }
+      frozen = true;
     }
-    if (enclosing != null) return enclosing.get(name);
+    Environment fork = new Environment();
+    fork.values = null;
+    fork.shared = shared;
+    return fork;
+  }
 
-    throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+  boolean isFrozen() {
+    return frozen;
   }
 
-  void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
+  /**
+   * Gives this environment a cell of its own for {@code name}, which so far resolved to {@code
+   * inherited}, a cell of the environment it was forked from. Stores go to the new cell, so neither
+   * that environment nor its other forks see them.
+   */
+  Cell adopt(String name, Cell inherited) {
+    if (frozen) throw new IllegalStateException("A forked environment is read-only.");
+    Cell cell = new Cell(this, inherited.value);
+    cell.defined = inherited.defined;
+    shared = shared.put(name, cell);
+    return cell;
+  }
+
+  Cell define(String name, Object value) {
+    if (frozen) throw new IllegalStateException("A forked environment is read-only.");
+    if (concurrent) return defineShared(name, value);
+    Cell cell = slot(name);
+    if (cell != null && cell.owner == this) {
+      // Redefinition reuses the cell, which keeps every cached reference to it valid.
+      cell.value = value;
+      cell.defined = true;
+      cell.version++;
+    } else {
+      cell = new Cell(this, value);
+      if (values != null) {
+        values.put(name, cell);
+      } else {
+        shared = shared.put(name, cell);
+      }
     }
-    if(enclosing != null) {
-      enclosing.assign(name, value);
-      return;
+    return cell;
+  }
+
+  // A new cell is published with its value already in it, so another thread never finds the name
+  // without one. A thread that loses the race to publish stores into the winner's cell instead.
+  private Cell defineShared(String name, Object value) {
+    Cell cell = new Cell(this, value);
+    Cell existing = values.putIfAbsent(name, cell);
+    if (existing == null) return cell;
+    existing.getAndSet(value);
+    existing.defined = true;
+    existing.bumpVersion();
+    return existing;
+  }
+
+  Cell local(String name) {
+    Cell cell = slot(name);
+    if (cell == null || !cell.defined) return null;
+    return cell;
+  }
+
+  /**
+   * The cell for a name declared here, including one that reset() has undefined. In a fork it may
+   * still belong to the environment it was forked from.
+   */
+  Cell slot(String name) {
+    return values != null ? values.get(name) : shared.get(name);
+  }
+
+  /**
+   * Undefines every variable while keeping the cells for the next define, so a loop body can run each
+   * iteration in the same environment without allocating. Returns the estimated bytes of the values
+   * that were dropped.
+   */
+  long reset() {
+    long released = 0;
+    for (Cell cell : values.values()) {
+      released += MemoryUsage.sizeOf(cell.value);
+      cell.value = null;
+      cell.defined = false;
+      cell.version++;
     }
-    throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    return released;
   }
 }
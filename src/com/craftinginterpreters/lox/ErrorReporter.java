@@ -0,0 +1,28 @@
+package com.craftinginterpreters.lox;
+
+import static com.craftinginterpreters.lox.TokenType.EOF;
+
+/**
+ * Collects the static errors of a single scan/parse. Each run gets its own reporter so that several
+ * sources can be scanned and parsed concurrently without sharing an error flag.
+ */
+class ErrorReporter {
+  boolean hadError = false;
+
+  void error(int line, String message) {
+    report(line, " at end", message);
+  }
+
+  void error(Token token, String message) {
+    if (token.type == EOF) {
+      report(token.line, " at end", message);
+    } else {
+      report(token.line, " at '" + token.lexeme + "'", message);
+    }
+  }
+
+  void report(int line, String where, String message) {
+    System.err.println("[line " + line + "] Error" + where + ": " + message);
+    hadError = true;
+  }
+}
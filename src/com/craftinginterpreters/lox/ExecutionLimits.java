@@ -0,0 +1,32 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Per-execution limits for an {@link Interpreter}. Steps are executed statements, counted from the
+ * start of each {@link Interpreter#interpret} call.
+ */
+class ExecutionLimits {
+  static final ExecutionLimits NONE = new ExecutionLimits(Long.MAX_VALUE, 0, Long.MAX_VALUE);
+
+  /** Most statements one execution may run before it is aborted with a {@link RuntimeError}. */
+  final long maxSteps;
+
+  /** Number of steps between cooperative {@link Thread#yield()} calls, or 0 to never yield. */
+  final long yieldInterval;
+
+  /** Most bytes one interpreter's environments may retain, as estimated by {@link MemoryUsage}. */
+  final long maxBytes;
+
+  ExecutionLimits(long maxSteps, long yieldInterval, long maxBytes) {
+    if (maxSteps < 0 || yieldInterval < 0 || maxBytes < 0) {
+      throw new IllegalArgumentException("Limits must not be negative.");
+    }
+    this.maxSteps = maxSteps;
+    this.yieldInterval = yieldInterval;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Whether steps or memory are limited, which only a sequential run can enforce exactly. */
+  boolean isBounded() {
+    return maxSteps != Long.MAX_VALUE || maxBytes != Long.MAX_VALUE;
+  }
+}
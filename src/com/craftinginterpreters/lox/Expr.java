@@ -1,5 +1,7 @@
 package com.craftinginterpreters.lox;
 
+import java.util.List;
+
 abstract class Expr {
     interface Visitor<R> {
         R visitBinaryExpr(Binary expr);
@@ -13,6 +15,22 @@ abstract class Expr {
         R visitAssignExpr(Assign expr);
 
         R visitVariableExpr(Variable expr);
+
+        R visitVarLiteralExpr(VarLiteral expr);
+
+        R visitVarVarExpr(VarVar expr);
+
+        R visitAddAssignExpr(AddAssign expr);
+
+        R visitCallExpr(Call expr);
+
+        R visitArrayLiteralExpr(ArrayLiteral expr);
+
+        R visitIndexExpr(Index expr);
+
+        R visitIndexSetExpr(IndexSet expr);
+
+        R visitMemoExpr(Memo expr);
     }
 
     static class Binary extends Expr {
@@ -81,6 +99,7 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+        Environment.Cell cell;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -94,6 +113,7 @@ abstract class Expr {
         }
 
         final Token name;
+        Environment.Cell cell;
 
         @Override
         <R> R accept(Visitor<R> visitor) {
@@ -101,5 +121,151 @@ abstract class Expr {
         }
     }
 
+    static class VarLiteral extends Expr {
+        VarLiteral(Token name, Token operator, Object value) {
+            this.name = name;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        final Token name;
+        final Token operator;
+        final Object value;
+        Environment.Cell cell;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitVarLiteralExpr(this);
+        }
+    }
+
+    static class VarVar extends Expr {
+        VarVar(Token left, Token operator, Token right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        final Token left;
+        final Token operator;
+        final Token right;
+        Environment.Cell leftCell;
+        Environment.Cell rightCell;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitVarVarExpr(this);
+        }
+    }
+
+    static class AddAssign extends Expr {
+        AddAssign(Token name, Token source, Token operator, Object value) {
+            this.name = name;
+            this.source = source;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        final Token name;
+        final Token source;
+        final Token operator;
+        final Object value;
+        Environment.Cell cell;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAddAssignExpr(this);
+        }
+    }
+
+    static class Call extends Expr {
+        Call(Expr callee, Token paren, List<Expr> arguments) {
+            this.callee = callee;
+            this.paren = paren;
+            this.arguments = arguments;
+        }
+
+        final Expr callee;
+        final Token paren;
+        final List<Expr> arguments;
+        HostFunction function;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCallExpr(this);
+        }
+    }
+
+    static class ArrayLiteral extends Expr {
+        ArrayLiteral(Token bracket, List<Expr> elements) {
+            this.bracket = bracket;
+            this.elements = elements;
+        }
+
+        final Token bracket;
+        final List<Expr> elements;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitArrayLiteralExpr(this);
+        }
+    }
+
+    static class Index extends Expr {
+        Index(Expr object, Token bracket, Expr index) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+        }
+
+        final Expr object;
+        final Token bracket;
+        final Expr index;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexExpr(this);
+        }
+    }
+
+    static class IndexSet extends Expr {
+        IndexSet(Expr object, Token bracket, Expr index, Expr value) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+            this.value = value;
+        }
+
+        final Expr object;
+        final Token bracket;
+        final Expr index;
+        final Expr value;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexSetExpr(this);
+        }
+    }
+
+    static class Memo extends Expr {
+        Memo(Expr expression, List<Token> reads) {
+            this.expression = expression;
+            this.reads = reads;
+        }
+
+        final Expr expression;
+        final List<Token> reads;
+        Object value;
+        Environment.Cell[] cells;
+        long[] versions;
+        long hits;
+        long misses;
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitMemoExpr(this);
+        }
+    }
+
     abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,21 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+sealed interface ExprNode {
+  record Binary(ExprNode left, Token operator, ExprNode right) implements ExprNode {}
+  record Grouping(ExprNode expression) implements ExprNode {}
+  record Literal(Object value) implements ExprNode {}
+  record Unary(Token operator, ExprNode right) implements ExprNode {}
+  record Assign(Token name, ExprNode value) implements ExprNode {}
+  record Variable(Token name) implements ExprNode {}
+  record VarLiteral(Token name, Token operator, Object value) implements ExprNode {}
+  record VarVar(Token left, Token operator, Token right) implements ExprNode {}
+  record AddAssign(Token name, Token source, Token operator, Object value) implements ExprNode {}
+  record Call(ExprNode callee, Token paren, List<ExprNode> arguments) implements ExprNode {}
+  record ArrayLiteral(Token bracket, List<ExprNode> elements) implements ExprNode {}
+  record Index(ExprNode object, Token bracket, ExprNode index) implements ExprNode {}
+  record IndexSet(ExprNode object, Token bracket, ExprNode index, ExprNode value)
+      implements ExprNode {}
+  record Memo(ExprNode expression, List<Token> reads) implements ExprNode {}
+}
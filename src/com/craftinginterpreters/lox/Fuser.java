@@ -0,0 +1,194 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.PLUS;
+
+/**
+ * Post-parse pass that replaces the most common expression shapes with fused nodes the interpreter
+ * can evaluate in a single visit:
+ *
+ * <ul>
+ *   <li>{@code a <op> 1} becomes {@link Expr.VarLiteral}
+ *   <li>{@code a <op> b} becomes {@link Expr.VarVar}
+ *   <li>{@code a = a + 1} becomes {@link Expr.AddAssign}
+ * </ul>
+ *
+ * The fused nodes keep the original tokens so runtime errors report the same lines.
+ */
+class Fuser implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private int fusions = 0;
+
+    List<Stmt> fuse(List<Stmt> statements) {
+        List<Stmt> fused = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            fused.add(stmt.accept(this));
+        }
+        return fused;
+    }
+
+    int fusions() {
+        return fusions;
+    }
+
+    private Expr fuse(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = fuse(expr.left);
+        Expr right = fuse(expr.right);
+        if (left instanceof Expr.Variable) {
+            Token name = ((Expr.Variable) left).name;
+            if (right instanceof Expr.Literal) {
+                fusions++;
+                return new Expr.VarLiteral(name, expr.operator, ((Expr.Literal) right).value);
+            }
+            if (right instanceof Expr.Variable) {
+                fusions++;
+                return new Expr.VarVar(name, expr.operator, ((Expr.Variable) right).name);
+            }
+        }
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr inner = fuse(expr.expression);
+        if (inner == expr.expression) return expr;
+        return new Expr.Grouping(inner);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = fuse(expr.right);
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        if (expr.value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr.value;
+            if (binary.operator.type == PLUS
+                    && binary.left instanceof Expr.Variable
+                    && binary.right instanceof Expr.Literal) {
+                Token source = ((Expr.Variable) binary.left).name;
+                if (source.lexeme.equals(expr.name.lexeme)) {
+                    fusions++;
+                    return new Expr.AddAssign(
+                            expr.name, source, binary.operator, ((Expr.Literal) binary.right).value);
+                }
+            }
+        }
+        Expr value = fuse(expr.value);
+        if (value == expr.value) return expr;
+        return new Expr.Assign(expr.name, value);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitVarLiteralExpr(Expr.VarLiteral expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitVarVarExpr(Expr.VarVar expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitAddAssignExpr(Expr.AddAssign expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(fuse(argument));
+        }
+        return new Expr.Call(fuse(expr.callee), expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+        List<Expr> elements = new ArrayList<>(expr.elements.size());
+        for (Expr element : expr.elements) {
+            elements.add(fuse(element));
+        }
+        return new Expr.ArrayLiteral(expr.bracket, elements);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        return new Expr.Index(fuse(expr.object), expr.bracket, fuse(expr.index));
+    }
+
+    @Override
+    public Expr visitIndexSetExpr(Expr.IndexSet expr) {
+        return new Expr.IndexSet(
+                fuse(expr.object), expr.bracket, fuse(expr.index), fuse(expr.value));
+    }
+
+    @Override
+    public Expr visitMemoExpr(Expr.Memo expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        // A body the lazy pre-parse skipped is left as it is and runs unoptimized.
+        if (stmt.deferred != null) return stmt;
+        return new Stmt.Block(stmt.first, fuse(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expr = fuse(stmt.expr);
+        if (expr == stmt.expr) return stmt;
+        return new Stmt.Expression(stmt.first, expr);
+    }
+
+    @Override
+    public Stmt visitPrintExprStmt(Stmt.PrintExpr stmt) {
+        Expr expr = fuse(stmt.expr);
+        if (expr == stmt.expr) return stmt;
+        return new Stmt.PrintExpr(stmt.first, expr);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        return new Stmt.While(stmt.first, fuse(stmt.condition), stmt.body.accept(this));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        return new Stmt.For(
+                stmt.first,
+                stmt.initializer == null ? null : stmt.initializer.accept(this),
+                stmt.condition == null ? null : fuse(stmt.condition),
+                stmt.increment == null ? null : fuse(stmt.increment),
+                stmt.body.accept(this));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+        Expr initializer = fuse(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        return new Stmt.Var(stmt.first, stmt.name, initializer);
+    }
+}
@@ -0,0 +1,376 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Post-parse pass that shares structurally identical expression subtrees, so a program repeating
+ * the same literals and the same arithmetic over the same variables keeps one node per distinct
+ * subtree rather than one per occurrence. Subtrees are compared bottom-up by node type, operator,
+ * names and literal values, ignoring the lines their tokens are on; a shared node keeps the tokens
+ * of its first occurrence.
+ *
+ * <p>The interpreter caches a global's cell on the node that reads or stores it, so a node naming a
+ * variable is only shared where the name always resolves to a global: where no enclosing block or
+ * loop declares it. Memoized expressions keep per-node state and blocks the lazy pre-parse skipped
+ * have no nodes yet, so both are left as they are.
+ *
+ * <p>An error raised in a shared node would report the line of its first occurrence. For every
+ * statement that took a node from elsewhere, the pass maps each token of that node to the line of
+ * the token it replaced, and {@link Interpreter#sharedTokenLines} reports that line for an error at
+ * that token. Errors at the statement's own tokens keep their lines. Where one statement takes the
+ * same node more than once, its first use gives the line.
+ */
+class HashConser implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final Map<List<Object>, Interned> table = new HashMap<>();
+    private final Map<Stmt, TokenLines> lines = new IdentityHashMap<>();
+    // Names declared by each enclosing block or loop, innermost last.
+    private final List<Set<String>> scopes = new ArrayList<>();
+    // Numbers the statements as they are interned, so a node knows which one added it.
+    private int statement = 0;
+    // For the statement being interned, each token of a node it took from elsewhere whose line differs
+    // from that of the token it replaced, and that line.
+    private Token[] sharedTokens = new Token[8];
+    private int[] sharedLines = new int[8];
+    private int sharedCount = 0;
+    private int nodes = 0;
+    private int hits = 0;
+
+    List<Stmt> intern(List<Stmt> statements) {
+        List<Stmt> interned = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            interned.add(stmt.accept(this));
+        }
+        return interned;
+    }
+
+    /**
+     * The lines of the tokens a statement's shared nodes replaced, for an error at one of their
+     * tokens to report.
+     */
+    static final class TokenLines {
+        private final Token[] tokens;
+        private final int[] lines;
+
+        private TokenLines(Token[] tokens, int[] lines) {
+            this.tokens = tokens;
+            this.lines = lines;
+        }
+
+        /** The line to report an error at this token at, or 0 if the token's own line is right. */
+        int lineOf(Token token) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] == token) return lines[i];
+            }
+            return 0;
+        }
+    }
+
+    // A node in the table and the statement that added it.
+    private record Interned(Expr node, int statement) {}
+
+    /** For each statement that took nodes from elsewhere, the lines of the tokens they replaced. */
+    Map<Stmt, TokenLines> lines() {
+        return lines;
+    }
+
+    /** Expression nodes the pass looked at. */
+    int nodes() {
+        return nodes;
+    }
+
+    /** Expression nodes left once identical subtrees share one node. */
+    int distinct() {
+        return nodes - hits;
+    }
+
+    private Expr intern(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private List<Expr> internAll(List<Expr> exprs) {
+        List<Expr> interned = null;
+        for (int i = 0; i < exprs.size(); i++) {
+            Expr expr = intern(exprs.get(i));
+            if (expr != exprs.get(i) && interned == null) {
+                interned = new ArrayList<>(exprs.subList(0, i));
+            }
+            if (interned != null) interned.add(expr);
+        }
+        return interned == null ? exprs : interned;
+    }
+
+    // Returns the node already interned under the same key, or makes this one the node for it. The
+    // key holds children that are themselves interned, so comparing them by identity is enough.
+    private Expr share(Expr expr, Object... key) {
+        nodes++;
+        Interned existing = table.putIfAbsent(Arrays.asList(key), new Interned(expr, statement));
+        if (existing == null) return expr;
+        hits++;
+        // Taking a node this statement added itself leaves its tokens on this statement's lines.
+        if (existing.statement == statement) return existing.node;
+        // The children are already interned, so they are the same nodes in both and only the node's
+        // own tokens differ.
+        Token[] taken = tokensOf(existing.node);
+        Token[] own = tokensOf(expr);
+        for (int i = 0; i < taken.length; i++) {
+            if (taken[i].line != own[i].line) replaced(taken[i], own[i].line);
+        }
+        return existing.node;
+    }
+
+    // Records the line a token taken from another statement replaced, unless an earlier use in this
+    // statement already did.
+    private void replaced(Token token, int line) {
+        for (int i = 0; i < sharedCount; i++) {
+            if (sharedTokens[i] == token) return;
+        }
+        if (sharedCount == sharedTokens.length) {
+            sharedTokens = Arrays.copyOf(sharedTokens, sharedCount * 2);
+            sharedLines = Arrays.copyOf(sharedLines, sharedCount * 2);
+        }
+        sharedTokens[sharedCount] = token;
+        sharedLines[sharedCount] = line;
+        sharedCount++;
+    }
+
+    // The tokens a node holds itself, not through its children, in the same order for nodes that
+    // share a key.
+    private static Token[] tokensOf(Expr expr) {
+        if (expr instanceof Expr.Binary) return new Token[] {((Expr.Binary) expr).operator};
+        if (expr instanceof Expr.Unary) return new Token[] {((Expr.Unary) expr).operator};
+        if (expr instanceof Expr.Assign) return new Token[] {((Expr.Assign) expr).name};
+        if (expr instanceof Expr.Variable) return new Token[] {((Expr.Variable) expr).name};
+        if (expr instanceof Expr.VarLiteral) {
+            Expr.VarLiteral fused = (Expr.VarLiteral) expr;
+            return new Token[] {fused.name, fused.operator};
+        }
+        if (expr instanceof Expr.VarVar) {
+            Expr.VarVar fused = (Expr.VarVar) expr;
+            return new Token[] {fused.left, fused.operator, fused.right};
+        }
+        if (expr instanceof Expr.AddAssign) {
+            Expr.AddAssign fused = (Expr.AddAssign) expr;
+            return new Token[] {fused.name, fused.source, fused.operator};
+        }
+        if (expr instanceof Expr.Call) return new Token[] {((Expr.Call) expr).paren};
+        if (expr instanceof Expr.ArrayLiteral) {
+            return new Token[] {((Expr.ArrayLiteral) expr).bracket};
+        }
+        if (expr instanceof Expr.Index) return new Token[] {((Expr.Index) expr).bracket};
+        if (expr instanceof Expr.IndexSet) return new Token[] {((Expr.IndexSet) expr).bracket};
+        return new Token[0];
+    }
+
+    private Expr unshared(Expr expr) {
+        nodes++;
+        return expr;
+    }
+
+    private boolean isGlobal(Token name) {
+        for (Set<String> scope : scopes) {
+            if (scope.contains(name.lexeme)) return false;
+        }
+        return true;
+    }
+
+    // Starts collecting the replaced lines of a statement, and returns those of the one before, or
+    // null if it replaced none.
+    private TokenLines startStatement() {
+        statement++;
+        if (sharedCount == 0) return null;
+        TokenLines previous = new TokenLines(
+                Arrays.copyOf(sharedTokens, sharedCount), Arrays.copyOf(sharedLines, sharedCount));
+        Arrays.fill(sharedTokens, 0, sharedCount, null);
+        sharedCount = 0;
+        return previous;
+    }
+
+    private void record(Stmt interned, TokenLines tokenLines) {
+        if (tokenLines != null) lines.put(interned, tokenLines);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = intern(expr.left);
+        Expr right = intern(expr.right);
+        if (left != expr.left || right != expr.right) {
+            expr = new Expr.Binary(left, expr.operator, right);
+        }
+        return share(expr, Expr.Binary.class, left, expr.operator.type, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr inner = intern(expr.expression);
+        if (inner != expr.expression) expr = new Expr.Grouping(inner);
+        return share(expr, Expr.Grouping.class, inner);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return share(expr, Expr.Literal.class, expr.value);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = intern(expr.right);
+        if (right != expr.right) expr = new Expr.Unary(expr.operator, right);
+        return share(expr, Expr.Unary.class, expr.operator.type, right);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = intern(expr.value);
+        if (value != expr.value) expr = new Expr.Assign(expr.name, value);
+        if (!isGlobal(expr.name)) return unshared(expr);
+        return share(expr, Expr.Assign.class, expr.name.lexeme, value);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        if (!isGlobal(expr.name)) return unshared(expr);
+        return share(expr, Expr.Variable.class, expr.name.lexeme);
+    }
+
+    @Override
+    public Expr visitVarLiteralExpr(Expr.VarLiteral expr) {
+        if (!isGlobal(expr.name)) return unshared(expr);
+        return share(expr, Expr.VarLiteral.class, expr.name.lexeme, expr.operator.type, expr.value);
+    }
+
+    @Override
+    public Expr visitVarVarExpr(Expr.VarVar expr) {
+        if (!isGlobal(expr.left) || !isGlobal(expr.right)) return unshared(expr);
+        return share(
+                expr, Expr.VarVar.class, expr.left.lexeme, expr.operator.type, expr.right.lexeme);
+    }
+
+    @Override
+    public Expr visitAddAssignExpr(Expr.AddAssign expr) {
+        if (!isGlobal(expr.name)) return unshared(expr);
+        return share(expr, Expr.AddAssign.class,
+                expr.name.lexeme, expr.source.lexeme, expr.operator.type, expr.value);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = intern(expr.callee);
+        List<Expr> arguments = internAll(expr.arguments);
+        if (callee != expr.callee || arguments != expr.arguments) {
+            expr = new Expr.Call(callee, expr.paren, arguments);
+        }
+        return share(expr, Expr.Call.class, callee, arguments);
+    }
+
+    @Override
+    public Expr visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+        List<Expr> elements = internAll(expr.elements);
+        if (elements != expr.elements) expr = new Expr.ArrayLiteral(expr.bracket, elements);
+        return share(expr, Expr.ArrayLiteral.class, elements);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        Expr object = intern(expr.object);
+        Expr index = intern(expr.index);
+        if (object != expr.object || index != expr.index) {
+            expr = new Expr.Index(object, expr.bracket, index);
+        }
+        return share(expr, Expr.Index.class, object, index);
+    }
+
+    @Override
+    public Expr visitIndexSetExpr(Expr.IndexSet expr) {
+        Expr object = intern(expr.object);
+        Expr index = intern(expr.index);
+        Expr value = intern(expr.value);
+        if (object != expr.object || index != expr.index || value != expr.value) {
+            expr = new Expr.IndexSet(object, expr.bracket, index, value);
+        }
+        return share(expr, Expr.IndexSet.class, object, index, value);
+    }
+
+    @Override
+    public Expr visitMemoExpr(Expr.Memo expr) {
+        return unshared(expr);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.deferred != null) return stmt;
+        Set<String> declared = new HashSet<>();
+        for (Stmt inner : stmt.statements) {
+            if (inner instanceof Stmt.Var) declared.add(((Stmt.Var) inner).name.lexeme);
+        }
+        scopes.add(declared);
+        List<Stmt> statements = intern(stmt.statements);
+        scopes.remove(scopes.size() - 1);
+        return new Stmt.Block(stmt.first, statements);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        startStatement();
+        Expr expr = intern(stmt.expr);
+        if (expr == stmt.expr) return stmt;
+        Stmt interned = new Stmt.Expression(stmt.first, expr);
+        record(interned, startStatement());
+        return interned;
+    }
+
+    @Override
+    public Stmt visitPrintExprStmt(Stmt.PrintExpr stmt) {
+        startStatement();
+        Expr expr = intern(stmt.expr);
+        if (expr == stmt.expr) return stmt;
+        Stmt interned = new Stmt.PrintExpr(stmt.first, expr);
+        record(interned, startStatement());
+        return interned;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        startStatement();
+        Expr condition = intern(stmt.condition);
+        TokenLines tokenLines = startStatement();
+        Stmt interned = new Stmt.While(stmt.first, condition, stmt.body.accept(this));
+        record(interned, tokenLines);
+        return interned;
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Set<String> declared = new HashSet<>();
+        if (stmt.initializer instanceof Stmt.Var) {
+            declared.add(((Stmt.Var) stmt.initializer).name.lexeme);
+        }
+        scopes.add(declared);
+        Stmt initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+        startStatement();
+        Expr condition = intern(stmt.condition);
+        Expr increment = intern(stmt.increment);
+        TokenLines tokenLines = startStatement();
+        Stmt body = stmt.body.accept(this);
+        scopes.remove(scopes.size() - 1);
+        Stmt interned = new Stmt.For(stmt.first, initializer, condition, increment, body);
+        record(interned, tokenLines);
+        return interned;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        startStatement();
+        Expr initializer = intern(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt interned = new Stmt.Var(stmt.first, stmt.name, initializer);
+        record(interned, startStatement());
+        return interned;
+    }
+}
@@ -0,0 +1,100 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A Java method exposed to scripts. The target handle is adapted once, when the function is created,
+ * to take its arguments as an {@code Object[]} of Lox values and return a Lox value: numeric
+ * primitives cross the boundary as doubles, {@code void} returns nil. Calls then go straight through
+ * {@link MethodHandle#invokeExact} without reflection, once the arguments have been checked against
+ * the parameter types, so a cast that fails inside the method is reported as the method failing.
+ *
+ * <p>A built-in whose first parameter is a {@link MemoryUsage} is passed the calling interpreter's,
+ * so it can charge what it allocates against the run's memory limit. That parameter is not one of
+ * the arguments a script passes.
+ */
+public final class HostFunction {
+  final String name;
+  final int arity;
+  private final boolean takesMemory;
+  // The type each script argument must have, with primitives boxed.
+  private final Class<?>[] argumentTypes;
+  private final MethodHandle invoker;
+
+  private HostFunction(
+      String name, int arity, boolean takesMemory, Class<?>[] argumentTypes, MethodHandle invoker) {
+    this.name = name;
+    this.arity = arity;
+    this.takesMemory = takesMemory;
+    this.argumentTypes = argumentTypes;
+    this.invoker = invoker;
+  }
+
+  public static HostFunction of(String name, MethodHandle target) {
+    if (target.type().parameterCount() > 255) {
+      throw new IllegalArgumentException("Host function '" + name + "' takes more than 255 arguments.");
+    }
+    MethodType type = target.type();
+    MethodType loxType = type.changeReturnType(loxType(type.returnType()));
+    for (int i = 0; i < type.parameterCount(); i++) {
+      loxType = loxType.changeParameterType(i, loxType(type.parameterType(i)));
+    }
+    MethodHandle invoker =
+        MethodHandles.explicitCastArguments(target, loxType)
+            .asType(MethodType.genericMethodType(type.parameterCount()))
+            .asSpreader(Object[].class, type.parameterCount());
+    boolean takesMemory = type.parameterCount() > 0 && type.parameterType(0) == MemoryUsage.class;
+    int arity = takesMemory ? type.parameterCount() - 1 : type.parameterCount();
+    Class<?>[] argumentTypes =
+        loxType.wrap().dropParameterTypes(0, type.parameterCount() - arity).parameterArray();
+    return new HostFunction(name, arity, takesMemory, argumentTypes, invoker);
+  }
+
+  private static Class<?> loxType(Class<?> type) {
+    if (type == int.class || type == long.class || type == float.class || type == short.class
+        || type == byte.class) {
+      return double.class;
+    }
+    return type;
+  }
+
+  Object call(Token paren, Object[] arguments, MemoryUsage memory) {
+    for (int i = 0; i < arguments.length; i++) {
+      if (!accepts(argumentTypes[i], arguments[i])) {
+        throw new RuntimeError(paren, "Invalid argument types for '" + name + "'.");
+      }
+    }
+    if (takesMemory) {
+      Object[] withMemory = new Object[arguments.length + 1];
+      withMemory[0] = memory;
+      System.arraycopy(arguments, 0, withMemory, 1, arguments.length);
+      arguments = withMemory;
+    }
+    try {
+      return (Object) invoker.invokeExact(arguments);
+    } catch (MemoryUsage.LimitExceeded e) {
+      throw new RuntimeError(paren, e.getMessage());
+    } catch (RuntimeException e) {
+      throw new RuntimeError(paren, "Host function '" + name + "' failed: " + e.getMessage());
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new RuntimeError(paren, "Host function '" + name + "' failed: " + e.getMessage());
+    }
+  }
+
+  // Any reference parameter takes nil, but a boxed primitive one would fail to unbox it.
+  private static boolean accepts(Class<?> type, Object argument) {
+    if (argument == null) {
+      return type != Double.class && type != Boolean.class && type != Character.class;
+    }
+    return type.isInstance(argument);
+  }
+
+  @Override
+  public String toString() {
+    return "<host fn " + name + ">";
+  }
+}
@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Registry of host functions that {@link Interpreter#install} defines as globals. */
+public class HostFunctions {
+  private final Map<String, HostFunction> functions = new LinkedHashMap<>();
+
+  /**
+   * The functions every script can call: {@code clock()} returns seconds since the epoch, {@code
+   * array(n)} a zero-filled array of length n, and {@code len(a)} the length of an array.
+   */
+  static HostFunctions standard() {
+    HostFunctions standard = new HostFunctions();
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      standard
+          .register(
+              "clock",
+              lookup.findStatic(HostFunctions.class, "clock", MethodType.methodType(double.class)))
+          .register(
+              "array",
+              lookup.findStatic(
+                  HostFunctions.class,
+                  "array",
+                  MethodType.methodType(LoxArray.class, MemoryUsage.class, double.class)))
+          .register(
+              "len",
+              lookup.findStatic(
+                  HostFunctions.class, "len", MethodType.methodType(int.class, LoxArray.class)));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+    return standard;
+  }
+
+  private static double clock() {
+    return System.currentTimeMillis() / 1000.0;
+  }
+
+  private static LoxArray array(MemoryUsage memory, double length) {
+    if (length < 0 || length != (int) length) {
+      throw new IllegalArgumentException("Array length must be a non-negative integer.");
+    }
+    memory.allocateArray(LoxArray.packedBytes((int) length));
+    return LoxArray.filled((int) length, 0);
+  }
+
+  private static int len(LoxArray array) {
+    return array.length();
+  }
+
+  public HostFunctions register(String name, MethodHandle target) {
+    functions.put(name, HostFunction.of(name, target));
+    return this;
+  }
+
+  Collection<HostFunction> functions() {
+    return functions.values();
+  }
+}
@@ -0,0 +1,369 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.EOF;
+
+/**
+ * Keeps the tokens and syntax tree of a source that is being edited and brings both up to date after
+ * each edit without starting over.
+ *
+ * <p>Rescanning starts at the token the edit begins in or just after, and stops once the scanner
+ * reaches a token that starts where an unchanged token used to. Reparsing starts at the statement
+ * holding the first changed token, within the innermost block that contains the whole change. It
+ * stops once it reaches a statement boundary that existed before the edit. Every other token and
+ * {@link Stmt} is reused. Tokens below the edit have their lines shifted in place.
+ *
+ * <p>If a rescan reports errors, or the reparse fails or runs past the end of its block, the whole
+ * token list is parsed again. Any edit made while the source has errors also starts from scratch. In
+ * both cases errors are reported exactly as a full scan and parse would report them.
+ */
+class IncrementalParser {
+    private final boolean explicitStack;
+    private String source;
+    private List<Token> tokens;
+    // Offset in the source at which each token starts.
+    private int[] offsets;
+    // Top-level statements and their spans, or null while the source has errors.
+    private List<Stmt> statements;
+    private List<StatementSpan> spans;
+
+    // What the last update did.
+    private int rescannedTokens = 0;
+    private int reparsedStatements = 0;
+    private boolean reparsedAll = true;
+
+    IncrementalParser(String source, ErrorReporter reporter, boolean explicitStack) {
+        this.explicitStack = explicitStack;
+        this.source = source;
+        scanAll(reporter);
+    }
+
+    List<Stmt> statements() {
+        return statements;
+    }
+
+    List<Token> tokens() {
+        return tokens;
+    }
+
+    String source() {
+        return source;
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with {@code inserted} and returns the
+     * updated statements, or null if the edited source has errors, which are reported to {@code
+     * reporter}. The list is updated in place by later edits.
+     */
+    List<Stmt> edit(int offset, int removed, String inserted, ErrorReporter reporter) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IllegalArgumentException("Edit is outside the source.");
+        }
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        int lineDelta = newlines(inserted) - newlines(source.substring(offset, offset + removed));
+        source = edited;
+        if (statements == null) {
+            scanAll(reporter);
+            return statements;
+        }
+
+        // Rescan from the last token starting before the edit, since the edit can extend or split it.
+        int first = lastTokenBefore(offset);
+        int scanFrom = first >= 0 ? offsets[first] : 0;
+        // A token's line is the one it ends on, so a string spanning lines started that many earlier.
+        int line = 1;
+        if (first >= 0) {
+            Token from = tokens.get(first);
+            line = from.line - newlines(from.lexeme);
+        }
+        if (first < 0) first = 0;
+        int delta = inserted.length() - removed;
+        int insertedEnd = offset + inserted.length();
+        Tracking tracking = new Tracking(reporter);
+        Scanner scanner = new Scanner(edited, tracking, scanFrom, line);
+        List<Token> fresh = new ArrayList<>();
+        int[] freshOffsets = new int[8];
+        int resume;
+        while (true) {
+            Token token = scanner.scanNext();
+            int at = scanner.tokenStart();
+            // Scanning the unchanged text from where an old token started yields the old tokens again.
+            if (at >= insertedEnd) {
+                resume = Arrays.binarySearch(offsets, first, offsets.length, at - delta);
+                if (resume >= 0) break;
+            }
+            if (fresh.size() == freshOffsets.length) {
+                freshOffsets = Arrays.copyOf(freshOffsets, fresh.size() * 2);
+            }
+            freshOffsets[fresh.size()] = at;
+            fresh.add(token);
+            if (token.type == EOF) {
+                resume = tokens.size();
+                break;
+            }
+        }
+
+        if (lineDelta != 0) {
+            for (int i = resume; i < tokens.size(); i++) {
+                tokens.get(i).line += lineDelta;
+            }
+        }
+        tokens.subList(first, resume).clear();
+        tokens.addAll(first, fresh);
+        int[] shifted = offsets;
+        if (fresh.size() != resume - first) {
+            shifted = new int[tokens.size()];
+            System.arraycopy(offsets, 0, shifted, 0, first);
+        }
+        System.arraycopy(offsets, resume, shifted, first + fresh.size(), offsets.length - resume);
+        System.arraycopy(freshOffsets, 0, shifted, first, fresh.size());
+        if (delta != 0) {
+            for (int i = first + fresh.size(); i < shifted.length; i++) {
+                shifted[i] += delta;
+            }
+        }
+        offsets = shifted;
+        rescannedTokens = fresh.size();
+
+        if (tracking.reported) {
+            // The scan errors are already reported; parsing reports whatever follows from them.
+            parseAll(reporter);
+            statements = null;
+            spans = null;
+            return null;
+        }
+        if (!reparse(first, resume, fresh.size())) parseAll(reporter);
+        return statements;
+    }
+
+    /** Describes what the last update rescanned and reparsed. */
+    String describe() {
+        if (reparsedAll) return "rescanned tokens: " + rescannedTokens + ", reparsed everything";
+        return "rescanned tokens: " + rescannedTokens + ", reparsed statements: " + reparsedStatements;
+    }
+
+    // Reparses the statements around old tokens [first, resume), which are now freshCount new tokens
+    // starting at the same index. Returns false if only a full reparse can tell what they became.
+    private boolean reparse(int first, int resume, int freshCount) {
+        int tokenDelta = freshCount - (resume - first);
+        int changedEnd = first + freshCount;
+
+        // Descend into the innermost block that holds the change strictly inside its braces.
+        List<StatementSpan> list = spans;
+        List<StatementSpan> path = new ArrayList<>();
+        List<Integer> pathIndexes = new ArrayList<>();
+        StatementSpan container = null;
+        int i;
+        while (true) {
+            i = firstEndingAfter(list, first);
+            if (i == list.size()) break;
+            StatementSpan span = list.get(i);
+            StatementSpan block = span.stmt instanceof Stmt.Block ? span : loopBody(span);
+            if (block == null || first <= block.start || resume > block.end - 1) break;
+            path.add(span);
+            pathIndexes.add(i);
+            if (block != span) {
+                path.add(block);
+                pathIndexes.add(0);
+            }
+            container = block;
+            list = block.children;
+        }
+
+        int closingBrace = container == null ? -1 : container.end - 1 + tokenDelta;
+        Parser parser = new Parser(tokens, new ErrorReporter() {
+            @Override
+            void report(int line, String where, String message) {
+                hadError = true;
+            }
+        }, explicitStack);
+        List<StatementSpan> reparsed = new ArrayList<>();
+        int position = i < list.size() ? list.get(i).start : (container == null ? 0 : closingBrace);
+        int resumeAt;
+        while (true) {
+            if (position >= changedEnd) {
+                resumeAt = startingAt(list, i, position - tokenDelta);
+                if (resumeAt >= 0) break;
+            }
+            boolean atEnd = container == null ? tokens.get(position).type == EOF : position == closingBrace;
+            if (atEnd) {
+                resumeAt = list.size();
+                break;
+            }
+            if (container != null && position > closingBrace) return false;
+            if (parser.declarationAt(position, reparsed) == null) return false;
+            position = parser.position();
+        }
+
+        if (tokenDelta != 0) {
+            for (int k = resumeAt; k < list.size(); k++) {
+                list.get(k).shift(tokenDelta);
+            }
+        }
+        list.subList(i, resumeAt).clear();
+        list.addAll(i, reparsed);
+        if (container == null) {
+            statements.subList(i, resumeAt).clear();
+            List<Stmt> replaced = new ArrayList<>(reparsed.size());
+            for (StatementSpan span : reparsed) {
+                replaced.add(span.stmt);
+            }
+            statements.addAll(i, replaced);
+        }
+        for (int level = path.size() - 1; level >= 0; level--) {
+            StatementSpan span = path.get(level);
+            span.end += tokenDelta;
+            span.stmt = rebuild(span);
+            List<StatementSpan> siblings = level == 0 ? spans : path.get(level - 1).children;
+            if (tokenDelta != 0) {
+                for (int k = pathIndexes.get(level) + 1; k < siblings.size(); k++) {
+                    siblings.get(k).shift(tokenDelta);
+                }
+            }
+        }
+        if (!path.isEmpty()) statements.set(pathIndexes.get(0), path.get(0).stmt);
+        reparsedStatements = reparsed.size();
+        reparsedAll = false;
+        return true;
+    }
+
+    private static StatementSpan loopBody(StatementSpan span) {
+        if (!(span.stmt instanceof Stmt.While || span.stmt instanceof Stmt.For)) return null;
+        StatementSpan body = span.children.get(0);
+        return body.stmt instanceof Stmt.Block ? body : null;
+    }
+
+    // A block or loop whose nested statements changed gets a new node; its other parts are reused.
+    private static Stmt rebuild(StatementSpan span) {
+        if (span.stmt instanceof Stmt.While) {
+            Stmt.While loop = (Stmt.While) span.stmt;
+            return new Stmt.While(loop.first, loop.condition, span.children.get(0).stmt);
+        }
+        if (span.stmt instanceof Stmt.For) {
+            Stmt.For loop = (Stmt.For) span.stmt;
+            return new Stmt.For(loop.first, loop.initializer, loop.condition, loop.increment,
+                    span.children.get(0).stmt);
+        }
+        List<Stmt> statements = new ArrayList<>(span.children.size());
+        for (StatementSpan child : span.children) {
+            statements.add(child.stmt);
+        }
+        return new Stmt.Block(span.stmt.first, statements);
+    }
+
+    // Spans in a list are contiguous and ordered, so both searches are binary.
+    private static int firstEndingAfter(List<StatementSpan> list, int index) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (list.get(middle).end > index) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static int startingAt(List<StatementSpan> list, int from, int index) {
+        int low = from;
+        int high = list.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int start = list.get(middle).start;
+            if (start == index) return middle;
+            if (start < index) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int lastTokenBefore(int offset) {
+        int low = 0;
+        int high = offsets.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (offsets[middle] < offset) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private void scanAll(ErrorReporter reporter) {
+        Tracking tracking = new Tracking(reporter);
+        Scanner scanner = new Scanner(source, tracking, 0, 1);
+        tokens = new ArrayList<>();
+        int[] starts = new int[64];
+        while (true) {
+            Token token = scanner.scanNext();
+            if (tokens.size() == starts.length) starts = Arrays.copyOf(starts, tokens.size() * 2);
+            starts[tokens.size()] = scanner.tokenStart();
+            tokens.add(token);
+            if (token.type == EOF) break;
+        }
+        offsets = Arrays.copyOf(starts, tokens.size());
+        rescannedTokens = tokens.size();
+        parseAll(reporter);
+        if (tracking.reported) {
+            statements = null;
+            spans = null;
+        }
+    }
+
+    private void parseAll(ErrorReporter reporter) {
+        Parser parser = new Parser(tokens, reporter, explicitStack);
+        List<StatementSpan> parsed = new ArrayList<>();
+        List<Stmt> parsedStatements = new ArrayList<>();
+        int position = 0;
+        while (tokens.get(position).type != EOF) {
+            Stmt stmt = parser.declarationAt(position, parsed);
+            if (stmt == null) {
+                statements = null;
+                spans = null;
+                return;
+            }
+            parsedStatements.add(stmt);
+            position = parser.position();
+        }
+        statements = parsedStatements;
+        spans = parsed;
+        reparsedStatements = parsed.size();
+        reparsedAll = true;
+    }
+
+    private static int newlines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    // Passes errors on while noting that there were some.
+    private static class Tracking extends ErrorReporter {
+        private final ErrorReporter target;
+        boolean reported = false;
+
+        Tracking(ErrorReporter target) {
+            this.target = target;
+        }
+
+        @Override
+        void report(int line, String where, String message) {
+            reported = true;
+            target.report(line, where, message);
+        }
+    }
+}
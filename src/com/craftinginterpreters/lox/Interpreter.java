@@ -1,9 +1,180 @@
 package com.craftinginterpreters.lox;
 
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    private Environment environment = new Environment();
+    private final Environment globals;
+    private Environment environment;
+    private final ExecutionLimits limits;
+    private final MemoryUsage memory;
+    private final boolean explicitStack;
+    private final PrintStream out;
+    // Set on workers, which share the globals but leave charging them to the interpreter they
+    // merge into.
+    private final boolean worker;
+    // Set when the globals come from Environment.concurrent() and other threads store to them.
+    private final boolean concurrentGlobals;
+    // For statements that took nodes shared with other statements, the line to report an error at
+    // one of those nodes' tokens at; see HashConser.
+    private Map<Stmt, HashConser.TokenLines> sharedTokenLines;
+    // Step count at which execute() next calls checkpoint() to enforce the budget or yield.
+    private long nextCheckpoint;
+
+    // Counters since the last interpret(), published to LoxMetrics and the JFR event when it ends.
+    private long statementsExecuted = 0;
+    private long environmentsAllocated = 1;
+    private long uncachedLookups = 0;
+    private long chainHops = 0;
+
+    Interpreter() {
+        this(ExecutionLimits.NONE);
+    }
+
+    Interpreter(ExecutionLimits limits) {
+        this(limits, false);
+    }
+
+    /**
+     * With {@code explicitStack} set, expressions are evaluated with heap-allocated stacks rather
+     * than by recursing through the visitor, so nesting depth is not limited by the Java stack.
+     */
+    Interpreter(ExecutionLimits limits, boolean explicitStack) {
+        this.globals = new Environment();
+        this.environment = globals;
+        this.limits = limits;
+        this.explicitStack = explicitStack;
+        this.memory = new MemoryUsage(limits.maxBytes);
+        this.out = System.out;
+        this.worker = false;
+        this.concurrentGlobals = false;
+        globals.retainedBytes = MemoryUsage.ENVIRONMENT_BYTES;
+        memory.retain(MemoryUsage.ENVIRONMENT_BYTES);
+    }
+
+    /**
+     * An interpreter whose globals are shared with interpreters on other threads; see {@link
+     * Environment#concurrent}. Reads of a global see the latest store from any thread, and {@code x
+     * = x + 1} on a global, once fused into {@link Expr.AddAssign}, is an atomic update. Any other
+     * read followed by a store is not, and arrays are not synchronized. Each thread must run its own
+     * parsed program, since AST nodes cache state, and the memory limit applies to each interpreter
+     * on its own, with none of them charging the globals for what they hold.
+     */
+    Interpreter(ExecutionLimits limits, Environment sharedGlobals) {
+        if (!sharedGlobals.isConcurrent()) {
+            throw new IllegalArgumentException("Shared globals must be concurrent.");
+        }
+        this.globals = sharedGlobals;
+        this.environment = globals;
+        this.limits = limits;
+        this.explicitStack = false;
+        this.memory = new MemoryUsage(limits.maxBytes);
+        this.out = System.out;
+        this.worker = false;
+        this.concurrentGlobals = true;
+    }
+
+    private Interpreter(Interpreter parent, PrintStream out) {
+        this.globals = parent.globals;
+        this.environment = globals;
+        this.limits = parent.limits;
+        this.explicitStack = parent.explicitStack;
+        this.memory = new MemoryUsage(limits.maxBytes);
+        this.out = out;
+        this.worker = true;
+        this.concurrentGlobals = parent.concurrentGlobals;
+        this.sharedTokenLines = parent.sharedTokenLines;
+        environmentsAllocated = 0;
+        scheduleCheckpoint();
+    }
+
+    /**
+     * An interpreter for running one top-level statement concurrently with others. It shares this
+     * interpreter's globals but has its own scopes, counters, memory usage and output; {@link
+     * #merge} folds those back in. The globals must not gain new names while workers run, so every
+     * global they declare has to be reserved first.
+     */
+    Interpreter worker(PrintStream out) {
+        return new Interpreter(this, out);
+    }
+
+    /** Adds a worker's counters and memory usage to this interpreter's, as if it had run here. */
+    void merge(Interpreter worker) {
+        statementsExecuted += worker.statementsExecuted;
+        environmentsAllocated += worker.environmentsAllocated;
+        uncachedLookups += worker.uncachedLookups;
+        chainHops += worker.chainHops;
+        // A finished top-level statement has released its scopes, so what it still retains is held
+        // by the globals.
+        globals.retainedBytes += worker.memory.retainedBytes;
+        memory.merge(worker.memory);
+    }
+
+    /**
+     * An interpreter for one run against a fork of this interpreter's globals, for running the same
+     * script against many variations of a warmed-up state. Forking is O(1) once this interpreter's
+     * globals have been forked the first time, and a fork only pays for the globals it stores to;
+     * see {@link Environment#fork}. From then on this interpreter's globals are read-only, so it can
+     * keep forking but can no longer run. A fork must not be run with a {@link ParallelExecutor}.
+     */
+    Interpreter fork() {
+        return new Interpreter(this, globals.fork());
+    }
+
+    private Interpreter(Interpreter parent, Environment globals) {
+        this.globals = globals;
+        this.environment = globals;
+        this.limits = parent.limits;
+        this.explicitStack = parent.explicitStack;
+        this.memory = new MemoryUsage(limits.maxBytes);
+        this.out = parent.out;
+        this.worker = false;
+        this.concurrentGlobals = false;
+        this.sharedTokenLines = parent.sharedTokenLines;
+        globals.retainedBytes = MemoryUsage.ENVIRONMENT_BYTES;
+        memory.retain(MemoryUsage.ENVIRONMENT_BYTES);
+    }
+
+    /**
+     * Reports a runtime error at a token of a node {@link HashConser} shared between statements at
+     * the line this statement's own copy of the token was on, rather than at the line of the
+     * statement the node came from.
+     */
+    void sharedTokenLines(Map<Stmt, HashConser.TokenLines> lines) {
+        this.sharedTokenLines = lines;
+    }
+
+    /** Defines a global, or redefines one, before a run, such as an input to a forked run. */
+    void defineGlobal(String name, Object value) {
+        Environment previous = environment;
+        environment = globals;
+        try {
+            declare(new Token(TokenType.IDENTIFIER, name, null, 0), value);
+        } finally {
+            environment = previous;
+        }
+    }
+
+    /** Creates the cell for a global ahead of its declaration, still undefined. */
+    void reserveGlobal(String name) {
+        if (globals.slot(name) != null) return;
+        globals.define(name, null).defined = false;
+        globals.retainedBytes += MemoryUsage.CELL_BYTES;
+        memory.retain(MemoryUsage.CELL_BYTES);
+    }
+
+    MemoryUsage memory() {
+        return memory;
+    }
+
+    /** Defines every function in the registry as a global. */
+    void install(HostFunctions functions) {
+        for (HostFunction function : functions.functions()) {
+            globals.define(function.name, function);
+        }
+    }
 
     @Override
     public Object visitLiteralExpr(Expr.Literal literal) {
@@ -17,14 +188,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
-        switch (expr.operator.type) {
+        return unaryOp(expr.operator, evaluate(expr.right));
+    }
+
+    private Object unaryOp(Token operator, Object right) {
+        switch (operator.type) {
             case BANG -> {
                 return !isTruthy(right);
             }
             case MINUS -> {
-                checkNumberOperand(expr.operator, right);
-                return -1 * (double) right;
+                checkNumberOperand(operator, right);
+                return number(-1 * (double) right);
             }
         }
         return null;
@@ -34,42 +208,49 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitBinaryExpr(Expr.Binary binary) {
         Object left = evaluate(binary.left);
         Object right = evaluate(binary.right);
-        switch (binary.operator.type) {
+        return binaryOp(binary.operator, left, right);
+    }
+
+    private Object binaryOp(Token operator, Object left, Object right) {
+        switch (operator.type) {
             case MINUS -> {
-                checkNumberOperands(binary.operator, left, right);
-                return (double) left - (double) right;
+                checkNumberOperands(operator, left, right);
+                return number((double) left - (double) right);
             }
             case PLUS -> {
                 if (left instanceof String && right instanceof String) {
+                    long size = MemoryUsage.stringSize(((String) left).length() + ((String) right).length());
+                    if (memory.exceeds(size)) throw new RuntimeError(operator, memory.limitMessage());
+                    memory.stringBytes += size;
                     return left + (String) right;
                 }
                 if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
+                    return number((double) left + (double) right);
                 }
-                throw new RuntimeError(binary.operator, "Operands must be two numbers or two strings");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings");
             }
             case SLASH -> {
-                checkNumberOperands(binary.operator, left, right);
-                return (double) left / (double) right;
+                checkNumberOperands(operator, left, right);
+                return number((double) left / (double) right);
             }
             case STAR -> {
-                checkNumberOperands(binary.operator, left, right);
-                return (double) left * (double) right;
+                checkNumberOperands(operator, left, right);
+                return number((double) left * (double) right);
             }
             case GREATER -> {
-                checkNumberOperands(binary.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left > (double) right;
             }
             case GREATER_EQUAL -> {
-                checkNumberOperands(binary.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left >= (double) right;
             }
             case LESS -> {
-                checkNumberOperands(binary.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left < (double) right;
             }
             case LESS_EQUAL -> {
-                checkNumberOperands(binary.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left <= (double) right;
             }
             case BANG_EQUAL -> {
@@ -79,16 +260,293 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    private Object number(double value) {
+        memory.numberBytes += MemoryUsage.BOXED_NUMBER_BYTES;
+        return value;
+    }
+
+    // Stores into a cell and charges the size difference to the environment that owns it. A cell
+    // inherited by a forked global environment is first replaced by one of the fork's own.
+    private void store(Token name, Environment.Cell cell, Object value) {
+        if (cell.owner.isFrozen()) cell = globals.adopt(name.lexeme, cell);
+        if (isShared(cell)) {
+            Object previous = cell.getAndSet(value);
+            cell.bumpVersion();
+            retain(name, cell.owner, MemoryUsage.sizeOf(value) - MemoryUsage.sizeOf(previous));
+            return;
+        }
+        long delta = MemoryUsage.sizeOf(value) - MemoryUsage.sizeOf(cell.value);
+        cell.value = value;
+        cell.version++;
+        retain(name, cell.owner, delta);
+    }
+
+    // Adds the result of an operator and a literal to a shared global, retrying whenever another
+    // thread stored to it in between, so that concurrent updates are never lost.
+    private Object addShared(Token name, Token operator, Environment.Cell cell, Object operand) {
+        while (true) {
+            Object previous = cell.getAcquire();
+            Object value = binaryOp(operator, previous, operand);
+            if (cell.compareAndSet(previous, value)) {
+                cell.bumpVersion();
+                retain(name, cell.owner, MemoryUsage.sizeOf(value) - MemoryUsage.sizeOf(previous));
+                return value;
+            }
+        }
+    }
+
+    private boolean isShared(Environment.Cell cell) {
+        return concurrentGlobals && cell.owner == globals;
+    }
+
+    // Reads a cell, with acquire semantics for a global that other threads may store to.
+    private Object read(Environment.Cell cell) {
+        return isShared(cell) ? cell.getAcquire() : cell.value;
+    }
+
+    private void retain(Token token, Environment owner, long bytes) {
+        if ((!worker && !concurrentGlobals) || owner != globals) owner.retainedBytes += bytes;
+        memory.retain(bytes);
+        if (memory.exceeds(0)) throw new RuntimeError(token, memory.limitMessage());
+    }
+
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        return assign(expr, evaluate(expr.value));
+    }
+
+    private Object assign(Expr.Assign expr, Object value) {
+        Environment.Cell cell = expr.cell;
+        if (!isCached(cell)) {
+            cell = lookUp(expr.name);
+            if (cell.owner == globals) expr.cell = cell;
+        }
+        store(expr.name, cell, value);
         return value;
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        Environment.Cell cell = expr.cell;
+        if (!isCached(cell)) {
+            cell = lookUp(expr.name);
+            if (cell.owner == globals) expr.cell = cell;
+        }
+        return read(cell);
+    }
+
+    @Override
+    public Object visitVarLiteralExpr(Expr.VarLiteral expr) {
+        Environment.Cell cell = expr.cell;
+        if (!isCached(cell)) {
+            cell = lookUp(expr.name);
+            if (cell.owner == globals) expr.cell = cell;
+        }
+        return binaryOp(expr.operator, read(cell), expr.value);
+    }
+
+    @Override
+    public Object visitVarVarExpr(Expr.VarVar expr) {
+        Environment.Cell left = expr.leftCell;
+        if (!isCached(left)) {
+            left = lookUp(expr.left);
+            if (left.owner == globals) expr.leftCell = left;
+        }
+        Environment.Cell right = expr.rightCell;
+        if (!isCached(right)) {
+            right = lookUp(expr.right);
+            if (right.owner == globals) expr.rightCell = right;
+        }
+        return binaryOp(expr.operator, read(left), read(right));
+    }
+
+    @Override
+    public Object visitAddAssignExpr(Expr.AddAssign expr) {
+        Environment.Cell cell = expr.cell;
+        if (!isCached(cell)) {
+            cell = lookUp(expr.source);
+            if (cell.owner == globals) expr.cell = cell;
+        }
+        if (isShared(cell)) return addShared(expr.name, expr.operator, cell, expr.value);
+        Object value = binaryOp(expr.operator, cell.value, expr.value);
+        store(expr.name, cell, value);
+        return value;
+    }
+
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        Object callee = evaluate(expr.callee);
+        Object[] arguments = new Object[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(expr.arguments.get(i));
+        }
+        return call(expr, callee, arguments);
+    }
+
+    private Object call(Expr.Call expr, Object callee, Object[] arguments) {
+        // The call site remembers the last function it checked, so a call that keeps reaching the
+        // same function skips the type and arity checks and goes straight to its method handle.
+        HostFunction function = expr.function;
+        if (callee != function) {
+            function = checkCall(expr.paren, callee, arguments);
+            expr.function = function;
+        }
+        return function.call(expr.paren, arguments, memory);
+    }
+
+    private HostFunction checkCall(Token paren, Object callee, Object[] arguments) {
+        if (!(callee instanceof HostFunction)) {
+            throw new RuntimeError(paren, "Can only call functions.");
+        }
+        HostFunction function = (HostFunction) callee;
+        if (arguments.length != function.arity) {
+            throw new RuntimeError(paren,
+                    "Expected " + function.arity + " arguments but got " + arguments.length + ".");
+        }
+        return function;
+    }
+
+    @Override
+    public Object visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+        Object[] values = new Object[expr.elements.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(expr.elements.get(i));
+        }
+        return newArray(expr.bracket, values);
+    }
+
+    private LoxArray newArray(Token bracket, Object[] values) {
+        boolean packed = true;
+        for (Object value : values) {
+            if (!(value instanceof Double)) packed = false;
+        }
+        if (!packed) {
+            allocateArray(bracket, LoxArray.boxedBytes(values.length));
+            return new LoxArray(values);
+        }
+        allocateArray(bracket, LoxArray.packedBytes(values.length));
+        double[] numbers = new double[values.length];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = (double) values[i];
+        }
+        return new LoxArray(numbers);
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        return getIndex(expr.bracket, object, index);
+    }
+
+    private Object getIndex(Token bracket, Object object, Object index) {
+        LoxArray array = checkArray(bracket, object);
+        return array.get(checkIndex(bracket, array, index));
+    }
+
+    @Override
+    public Object visitIndexSetExpr(Expr.IndexSet expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+        return setIndex(expr.bracket, object, index, value);
+    }
+
+    private Object setIndex(Token bracket, Object object, Object index, Object value) {
+        LoxArray array = checkArray(bracket, object);
+        int slot = checkIndex(bracket, array, index);
+        if (array.isPacked() && !(value instanceof Double)) {
+            allocateArray(bracket, LoxArray.boxedBytes(array.length()));
+        }
+        array.set(slot, value);
+        return value;
+    }
+
+    private void allocateArray(Token bracket, long bytes) {
+        if (memory.exceeds(bytes)) throw new RuntimeError(bracket, memory.limitMessage());
+        memory.arrayBytes += bytes;
+    }
+
+    private LoxArray checkArray(Token bracket, Object object) {
+        if (object instanceof LoxArray) return (LoxArray) object;
+        throw new RuntimeError(bracket, "Only arrays can be indexed.");
+    }
+
+    private int checkIndex(Token bracket, LoxArray array, Object index) {
+        if (!(index instanceof Double)) throw new RuntimeError(bracket, "Index must be a number.");
+        double value = (double) index;
+        int slot = (int) value;
+        if (slot != value) throw new RuntimeError(bracket, "Index must be an integer.");
+        if (slot < 0 || slot >= array.length()) {
+            throw new RuntimeError(bracket,
+                    "Index " + slot + " is out of bounds for length " + array.length() + ".");
+        }
+        return slot;
+    }
+
+    // Only global cells are cached on AST nodes: a block's locals live in a fresh environment on every
+    // execution, while a global keeps its cell for the lifetime of this interpreter. Without closures
+    // a node resolves to the same scope every time it runs, so a cached global stays correct. The
+    // owner check keeps an AST shared between interpreters from reading another run's globals.
+    private boolean isCached(Environment.Cell cell) {
+        return cell != null && cell.owner == globals;
+    }
+
+    private Environment.Cell lookUp(Token name) {
+        Environment.Cell cell = find(name);
+        if (cell == null) throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return cell;
+    }
+
+    // Counts toward uncachedLookups: a global already cached on its node never gets here.
+    private Environment.Cell find(Token name) {
+        uncachedLookups++;
+        for (Environment scope = environment; scope != null; scope = scope.enclosing) {
+            Environment.Cell cell = scope.local(name.lexeme);
+            if (cell != null) return cell;
+            chainHops++;
+        }
+        return null;
+    }
+
+    // A memoized expression is pure, so the cells it reads are all of its inputs: while each name
+    // still resolves to the same cell at the same version, the last result is still the answer.
+    @Override
+    public Object visitMemoExpr(Expr.Memo expr) {
+        Environment.Cell[] cells = expr.cells;
+        boolean unchanged = cells != null;
+        if (cells == null) {
+            cells = new Environment.Cell[expr.reads.size()];
+            expr.versions = new long[cells.length];
+        }
+        long[] versions = expr.versions;
+        for (int i = 0; i < cells.length; i++) {
+            Environment.Cell cell = cells[i];
+            // A local may be read from a fresh environment each time, so only globals skip the lookup.
+            if (!isCached(cell) || !cell.defined) cell = find(expr.reads.get(i));
+            // Evaluating will report the undefined variable.
+            if (cell == null) {
+                unchanged = false;
+                break;
+            }
+            if (cell != cells[i] || cell.version != versions[i]) {
+                unchanged = false;
+                cells[i] = cell;
+                versions[i] = cell.version;
+            }
+        }
+        if (unchanged) {
+            expr.hits++;
+            return expr.value;
+        }
+        expr.misses++;
+        // Evaluating a pure expression stores to no variable, so the versions read above still hold
+        // once it is done. Until then, a failed evaluation must not leave them looking current.
+        expr.cells = null;
+        Object value = evaluate(expr.expression);
+        expr.value = value;
+        expr.cells = cells;
+        return value;
     }
 
     @Override
@@ -100,7 +558,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintExprStmt(Stmt.PrintExpr printExpr) {
         Object value = evaluate(printExpr.expr);
-        System.out.println(stringify(value));
+        out.println(stringify(value));
         return null;
     }
 
@@ -110,16 +568,107 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
+        declare(stmt.name, value);
         return null;
     }
 
+    private void declare(Token name, Object value) {
+        Environment.Cell cell = environment.slot(name.lexeme);
+        if (cell == null || cell.owner != environment) {
+            // Defined along with its value, so a thread sharing the globals never sees it unset.
+            cell = environment.define(name.lexeme, value);
+            retain(name, environment, MemoryUsage.CELL_BYTES + MemoryUsage.sizeOf(value));
+            return;
+        }
+        cell.defined = true;
+        store(name, cell, value);
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block blockStatements) {
-        executeBlock(blockStatements.statements, new Environment(environment));
+        List<Stmt> statements = statementsOf(blockStatements);
+        Environment blockEnvironment = newEnvironment(blockStatements.first);
+        try {
+            executeBlock(statements, blockEnvironment);
+        } finally {
+            memory.release(blockEnvironment.retainedBytes);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        loop(stmt.condition, stmt.body, null);
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        Environment loopEnvironment = newEnvironment(stmt.first);
+        Environment previous = environment;
+        try {
+            environment = loopEnvironment;
+            if (stmt.initializer != null) execute(stmt.initializer);
+            loop(stmt.condition, stmt.body, stmt.increment);
+        } finally {
+            environment = previous;
+            memory.release(loopEnvironment.retainedBytes);
+        }
+        return null;
+    }
+
+    // A block body gets one environment for the whole loop, reset after each iteration instead of
+    // allocating a fresh one. The body still counts as a step per iteration.
+    private void loop(Expr condition, Stmt body, Expr increment) {
+        if (!(body instanceof Stmt.Block)) {
+            while (condition == null || isTruthy(evaluate(condition))) {
+                execute(body);
+                if (increment != null) evaluate(increment);
+            }
+            return;
+        }
+        List<Stmt> statements = null;
+        Environment bodyEnvironment = null;
+        try {
+            while (condition == null || isTruthy(evaluate(condition))) {
+                if (++statementsExecuted >= nextCheckpoint) checkpoint(body.first);
+                if (bodyEnvironment == null) {
+                    statements = statementsOf((Stmt.Block) body);
+                    bodyEnvironment = newEnvironment(body.first);
+                }
+                executeBlock(statements, bodyEnvironment);
+                long released = bodyEnvironment.reset();
+                bodyEnvironment.retainedBytes -= released;
+                memory.release(released);
+                if (increment != null) evaluate(increment);
+            }
+        } finally {
+            if (bodyEnvironment != null) memory.release(bodyEnvironment.retainedBytes);
+        }
+    }
+
+    // A block the lazy pre-parse skipped is parsed the first time it runs.
+    private static List<Stmt> statementsOf(Stmt.Block block) {
+        if (block.deferred != null && !block.deferred.load(block)) throw new Parser.BlockSyntaxError();
+        return block.statements;
+    }
+
+    // Allocates and accounts for the environment of a block or loop, reporting a memory limit error
+    // at the statement's first token. The caller releases its retainedBytes when the environment
+    // goes out of scope.
+    private Environment newEnvironment(Token first) {
+        environmentsAllocated++;
+        Environment scope = new Environment(environment);
+        memory.environmentBytes += MemoryUsage.ENVIRONMENT_BYTES;
+        scope.retainedBytes = MemoryUsage.ENVIRONMENT_BYTES;
+        memory.retain(MemoryUsage.ENVIRONMENT_BYTES);
+        if (memory.exceeds(0)) {
+            memory.release(MemoryUsage.ENVIRONMENT_BYTES);
+            throw new RuntimeError(first, memory.limitMessage());
+        }
+        return scope;
+    }
+
     private void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
@@ -149,7 +698,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
         if (object instanceof Double) {
             String text = object.toString();
@@ -172,20 +721,441 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     private Object evaluate(Expr expr) {
-        return expr.accept(this);
+        if (!explicitStack) return expr.accept(this);
+        // The top of the tree is still evaluated recursively, which is the fastest path for ordinary
+        // expressions, and anything deeper moves to the heap. Java stack use stays bounded either way.
+        if (evaluationDepth >= MAX_RECURSIVE_DEPTH) return evaluateIteratively(expr);
+        evaluationDepth++;
+        try {
+            return expr.accept(this);
+        } finally {
+            evaluationDepth--;
+        }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private static final int MAX_RECURSIVE_DEPTH = 64;
+    private int evaluationDepth = 0;
+
+    // Work and value stacks for evaluateIteratively(). Each pending node has a phase counting how many
+    // of its operands have been pushed so far, and once they all have, it pops their values off the
+    // value stack. Nodes without sub-expressions go through accept().
+    private Expr[] pending = new Expr[32];
+    private int[] phases = new int[32];
+    private int pendingCount = 0;
+    private Object[] values = new Object[32];
+    private int valueCount = 0;
+
+    private Object evaluateIteratively(Expr root) {
+        int pendingBase = pendingCount;
+        int valueBase = valueCount;
+        try {
+            push(root);
+            while (pendingCount > pendingBase) {
+                int top = pendingCount - 1;
+                Expr expr = pending[top];
+                int phase = phases[top]++;
+                if (expr instanceof Expr.Binary) {
+                    Expr.Binary binary = (Expr.Binary) expr;
+                    if (phase == 0) {
+                        push(binary.left);
+                    } else if (phase == 1) {
+                        push(binary.right);
+                    } else {
+                        pendingCount = top;
+                        Object right = values[--valueCount];
+                        Object left = values[--valueCount];
+                        pushValue(binaryOp(binary.operator, left, right));
+                    }
+                } else if (expr instanceof Expr.Grouping) {
+                    pending[top] = ((Expr.Grouping) expr).expression;
+                    phases[top] = 0;
+                } else if (expr instanceof Expr.Unary) {
+                    Expr.Unary unary = (Expr.Unary) expr;
+                    if (phase == 0) {
+                        push(unary.right);
+                    } else {
+                        pendingCount = top;
+                        values[valueCount - 1] = unaryOp(unary.operator, values[valueCount - 1]);
+                    }
+                } else if (expr instanceof Expr.Assign) {
+                    Expr.Assign assign = (Expr.Assign) expr;
+                    if (phase == 0) {
+                        push(assign.value);
+                    } else {
+                        pendingCount = top;
+                        assign(assign, values[valueCount - 1]);
+                    }
+                } else if (expr instanceof Expr.Call) {
+                    Expr.Call call = (Expr.Call) expr;
+                    if (phase == 0) {
+                        push(call.callee);
+                    } else if (phase <= call.arguments.size()) {
+                        push(call.arguments.get(phase - 1));
+                    } else {
+                        pendingCount = top;
+                        Object[] arguments = popValues(call.arguments.size());
+                        Object callee = values[--valueCount];
+                        pushValue(call(call, callee, arguments));
+                    }
+                } else if (expr instanceof Expr.ArrayLiteral) {
+                    Expr.ArrayLiteral array = (Expr.ArrayLiteral) expr;
+                    if (phase < array.elements.size()) {
+                        push(array.elements.get(phase));
+                    } else {
+                        pendingCount = top;
+                        pushValue(newArray(array.bracket, popValues(array.elements.size())));
+                    }
+                } else if (expr instanceof Expr.Index) {
+                    Expr.Index index = (Expr.Index) expr;
+                    if (phase == 0) {
+                        push(index.object);
+                    } else if (phase == 1) {
+                        push(index.index);
+                    } else {
+                        pendingCount = top;
+                        Object slot = values[--valueCount];
+                        Object object = values[--valueCount];
+                        pushValue(getIndex(index.bracket, object, slot));
+                    }
+                } else if (expr instanceof Expr.IndexSet) {
+                    Expr.IndexSet set = (Expr.IndexSet) expr;
+                    if (phase == 0) {
+                        push(set.object);
+                    } else if (phase == 1) {
+                        push(set.index);
+                    } else if (phase == 2) {
+                        push(set.value);
+                    } else {
+                        pendingCount = top;
+                        Object value = values[--valueCount];
+                        Object slot = values[--valueCount];
+                        Object object = values[--valueCount];
+                        pushValue(setIndex(set.bracket, object, slot, value));
+                    }
+                } else {
+                    pendingCount = top;
+                    pushValue(expr.accept(this));
+                }
+            }
+            Object result = values[--valueCount];
+            values[valueCount] = null;
+            return result;
+        } finally {
+            Arrays.fill(pending, pendingBase, pendingCount, null);
+            Arrays.fill(values, valueBase, valueCount, null);
+            pendingCount = pendingBase;
+            valueCount = valueBase;
+        }
     }
 
-    void interpret(List<Stmt> stmts) {
+    private void push(Expr expr) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+            phases = Arrays.copyOf(phases, pendingCount * 2);
+        }
+        pending[pendingCount] = expr;
+        phases[pendingCount] = 0;
+        pendingCount++;
+    }
+
+    private void pushValue(Object value) {
+        if (valueCount == values.length) values = Arrays.copyOf(values, valueCount * 2);
+        values[valueCount++] = value;
+    }
+
+    // Pops the top count values, in the order they were pushed.
+    private Object[] popValues(int count) {
+        Object[] popped = Arrays.copyOfRange(values, valueCount - count, valueCount);
+        Arrays.fill(values, valueCount - count, valueCount, null);
+        valueCount -= count;
+        return popped;
+    }
+
+    void execute(Stmt stmt) {
         try {
-            for (Stmt stmt : stmts) {
+            if (++statementsExecuted >= nextCheckpoint) checkpoint(stmt.first);
+            stmt.accept(this);
+        } catch (RuntimeError error) {
+            // The innermost statement is where the error happened, so it settles the line and the
+            // statements around it leave it alone. Only a token of a node the statement took from
+            // another one reports a line other than its own.
+            if (sharedTokenLines != null && error.statementLine == 0) {
+                HashConser.TokenLines lines = sharedTokenLines.get(stmt);
+                int line = lines == null ? 0 : lines.lineOf(error.token);
+                error.statementLine = line > 0 ? line : error.token.line;
+            }
+            throw error;
+        }
+    }
+
+    private void checkpoint(Token first) {
+        if (statementsExecuted > limits.maxSteps) {
+            throw new RuntimeError(first,
+                    "Execution exceeded its budget of " + limits.maxSteps + " steps.");
+        }
+        // Lets other virtual threads sharing this carrier run, bounding the latency of small scripts.
+        if (limits.yieldInterval > 0) Thread.yield();
+        scheduleCheckpoint();
+    }
+
+    private void scheduleCheckpoint() {
+        long budgetEnd = limits.maxSteps == Long.MAX_VALUE ? Long.MAX_VALUE : limits.maxSteps + 1;
+        long nextYield = limits.yieldInterval > 0
+                ? statementsExecuted + limits.yieldInterval : Long.MAX_VALUE;
+        nextCheckpoint = Math.min(budgetEnd, nextYield);
+    }
+
+    // Dispatch over the sealed node hierarchy. Every record is final, so each instanceof is a single
+    // class compare, and the chains are ordered by how often each node tends to run. This is the
+    // same chain of tests that a pattern-matching switch over a sealed type compiles down to.
+    private Object evaluate(ExprNode expr) {
+        if (expr instanceof ExprNode.Binary binary) {
+            Object left = evaluate(binary.left());
+            return binaryOp(binary.operator(), left, evaluate(binary.right()));
+        }
+        if (expr instanceof ExprNode.Variable variable) return read(lookUp(variable.name()));
+        if (expr instanceof ExprNode.Literal literal) return literal.value();
+        if (expr instanceof ExprNode.VarLiteral varLiteral) {
+            Object left = read(lookUp(varLiteral.name()));
+            return binaryOp(varLiteral.operator(), left, varLiteral.value());
+        }
+        if (expr instanceof ExprNode.VarVar varVar) {
+            Object left = read(lookUp(varVar.left()));
+            return binaryOp(varVar.operator(), left, read(lookUp(varVar.right())));
+        }
+        return evaluateRest(expr);
+    }
+
+    // Split off so the hot tests above stay small enough for the JIT to inline.
+    private Object evaluateRest(ExprNode expr) {
+        if (expr instanceof ExprNode.AddAssign addAssign) {
+            Environment.Cell cell = lookUp(addAssign.source());
+            if (isShared(cell)) {
+                return addShared(addAssign.name(), addAssign.operator(), cell, addAssign.value());
+            }
+            Object value = binaryOp(addAssign.operator(), cell.value, addAssign.value());
+            store(addAssign.name(), cell, value);
+            return value;
+        }
+        if (expr instanceof ExprNode.Assign assign) {
+            Object value = evaluate(assign.value());
+            store(assign.name(), lookUp(assign.name()), value);
+            return value;
+        }
+        if (expr instanceof ExprNode.Grouping grouping) return evaluate(grouping.expression());
+        if (expr instanceof ExprNode.Unary unary) {
+            return unaryOp(unary.operator(), evaluate(unary.right()));
+        }
+        if (expr instanceof ExprNode.Index index) {
+            Object object = evaluate(index.object());
+            Object slot = evaluate(index.index());
+            LoxArray array = checkArray(index.bracket(), object);
+            return array.get(checkIndex(index.bracket(), array, slot));
+        }
+        if (expr instanceof ExprNode.IndexSet indexSet) {
+            Object object = evaluate(indexSet.object());
+            Object slot = evaluate(indexSet.index());
+            Object value = evaluate(indexSet.value());
+            return setIndex(indexSet.bracket(), object, slot, value);
+        }
+        if (expr instanceof ExprNode.Call call) {
+            Object callee = evaluate(call.callee());
+            Object[] arguments = evaluateAll(call.arguments());
+            return checkCall(call.paren(), callee, arguments).call(call.paren(), arguments, memory);
+        }
+        if (expr instanceof ExprNode.ArrayLiteral array) {
+            return newArray(array.bracket(), evaluateAll(array.elements()));
+        }
+        // A memo has nowhere to keep its last result, so it only evaluates what it wraps.
+        return evaluate(((ExprNode.Memo) expr).expression());
+    }
+
+    private Object[] evaluateAll(List<ExprNode> exprs) {
+        Object[] values = new Object[exprs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(exprs.get(i));
+        }
+        return values;
+    }
+
+    private void execute(StmtNode stmt) {
+        if (++statementsExecuted >= nextCheckpoint) checkpoint(stmt.first());
+        if (stmt instanceof StmtNode.Expression expression) {
+            evaluate(expression.expr());
+        } else if (stmt instanceof StmtNode.Var var) {
+            declare(var.name(), var.initializer() == null ? null : evaluate(var.initializer()));
+        } else if (stmt instanceof StmtNode.Block block) {
+            Environment blockEnvironment = newEnvironment(block.first());
+            try {
+                executeNodes(block.statements(), blockEnvironment);
+            } finally {
+                memory.release(blockEnvironment.retainedBytes);
+            }
+        } else if (stmt instanceof StmtNode.PrintExpr print) {
+            out.println(stringify(evaluate(print.expr())));
+        } else if (stmt instanceof StmtNode.While loop) {
+            loop(loop.condition(), loop.body(), null);
+        } else {
+            StmtNode.For loop = (StmtNode.For) stmt;
+            Environment loopEnvironment = newEnvironment(loop.first());
+            Environment previous = environment;
+            try {
+                environment = loopEnvironment;
+                if (loop.initializer() != null) execute(loop.initializer());
+                loop(loop.condition(), loop.body(), loop.increment());
+            } finally {
+                environment = previous;
+                memory.release(loopEnvironment.retainedBytes);
+            }
+        }
+    }
+
+    // Reuses one environment for a block body the same way loop() does for the visitor tree.
+    private void loop(ExprNode condition, StmtNode body, ExprNode increment) {
+        if (!(body instanceof StmtNode.Block block)) {
+            while (condition == null || isTruthy(evaluate(condition))) {
+                execute(body);
+                if (increment != null) evaluate(increment);
+            }
+            return;
+        }
+        Environment bodyEnvironment = null;
+        try {
+            while (condition == null || isTruthy(evaluate(condition))) {
+                if (++statementsExecuted >= nextCheckpoint) checkpoint(block.first());
+                if (bodyEnvironment == null) bodyEnvironment = newEnvironment(block.first());
+                executeNodes(block.statements(), bodyEnvironment);
+                long released = bodyEnvironment.reset();
+                bodyEnvironment.retainedBytes -= released;
+                memory.release(released);
+                if (increment != null) evaluate(increment);
+            }
+        } finally {
+            if (bodyEnvironment != null) memory.release(bodyEnvironment.retainedBytes);
+        }
+    }
+
+    private void executeNodes(List<StmtNode> statements, Environment environment) {
+        Environment previous = this.environment;
+        try {
+            this.environment = environment;
+            for (StmtNode stmt : statements) {
+                execute(stmt);
+            }
+        } finally {
+            this.environment = previous;
+        }
+    }
+
+    // Walks down the left spine instead of recursing, so it copes with arbitrarily deep trees.
+    static Token tokenOf(Expr expr) {
+        Token operator = null;
+        while (true) {
+            if (expr instanceof Expr.Binary) {
+                operator = ((Expr.Binary) expr).operator;
+                expr = ((Expr.Binary) expr).left;
+            } else if (expr instanceof Expr.Grouping) {
+                expr = ((Expr.Grouping) expr).expression;
+            } else if (expr instanceof Expr.Unary) {
+                return ((Expr.Unary) expr).operator;
+            } else if (expr instanceof Expr.Assign) {
+                return ((Expr.Assign) expr).name;
+            } else if (expr instanceof Expr.Variable) {
+                return ((Expr.Variable) expr).name;
+            } else if (expr instanceof Expr.VarLiteral) {
+                return ((Expr.VarLiteral) expr).name;
+            } else if (expr instanceof Expr.VarVar) {
+                return ((Expr.VarVar) expr).left;
+            } else if (expr instanceof Expr.AddAssign) {
+                return ((Expr.AddAssign) expr).name;
+            } else if (expr instanceof Expr.Call) {
+                operator = ((Expr.Call) expr).paren;
+                expr = ((Expr.Call) expr).callee;
+            } else if (expr instanceof Expr.ArrayLiteral) {
+                return ((Expr.ArrayLiteral) expr).bracket;
+            } else if (expr instanceof Expr.Index) {
+                operator = ((Expr.Index) expr).bracket;
+                expr = ((Expr.Index) expr).object;
+            } else if (expr instanceof Expr.IndexSet) {
+                operator = ((Expr.IndexSet) expr).bracket;
+                expr = ((Expr.IndexSet) expr).object;
+            } else if (expr instanceof Expr.Memo) {
+                expr = ((Expr.Memo) expr).expression;
+            } else {
+                return operator;
+            }
+        }
+    }
+
+    void interpret(List<Stmt> stmts) {
+        interpret(stmts, null);
+    }
+
+    /**
+     * Runs a program. With an executor, independent top-level statements run concurrently; output
+     * and runtime errors still appear in program order.
+     */
+    void interpret(List<Stmt> stmts, ParallelExecutor executor) {
+        run(() -> {
+            if (executor != null) {
+                executor.execute(this, stmts);
+            } else {
+                for (Stmt stmt : stmts) {
+                    execute(stmt);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs a program converted to the sealed {@link StmtNode} hierarchy. Records carry no cache
+     * fields, so every variable is looked up by name.
+     */
+    void interpretNodes(List<StmtNode> stmts) {
+        run(() -> {
+            for (StmtNode stmt : stmts) {
                 execute(stmt);
             }
+        });
+    }
+
+    // Reports a runtime error and publishes the counters once the program ends.
+    private void run(Runnable program) {
+        boolean failed = false;
+        scheduleCheckpoint();
+        memory.reset();
+        LoxEvents.Interpret event = new LoxEvents.Interpret();
+        event.begin();
+        try {
+            program.run();
         } catch (RuntimeError error) {
+            failed = true;
+            LoxEvents.ErrorEvent errorEvent = new LoxEvents.ErrorEvent();
+            if (errorEvent.shouldCommit()) {
+                errorEvent.message = error.getMessage();
+                errorEvent.line = error.line();
+                errorEvent.commit();
+            }
             Lox.runtimeError(error);
+        } catch (Parser.BlockSyntaxError error) {
+            failed = true;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.statementsExecuted = statementsExecuted;
+                event.environmentsAllocated = environmentsAllocated;
+                event.uncachedLookups = uncachedLookups;
+                event.chainHops = chainHops;
+                event.bytesAllocated = memory.allocatedBytes();
+                event.peakBytesRetained = memory.peakRetainedBytes;
+                event.commit();
+            }
+            LoxMetrics.INSTANCE.record(
+                    statementsExecuted, environmentsAllocated, uncachedLookups, chainHops, failed);
+            statementsExecuted = 0;
+            environmentsAllocated = 0;
+            uncachedLookups = 0;
+            chainHops = 0;
         }
     }
 }
@@ -7,17 +7,29 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
-
-import static com.craftinginterpreters.lox.TokenType.EOF;
+import java.util.concurrent.ForkJoinPool;
 
 public class Lox {
-    static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    static final boolean printStats = Boolean.getBoolean("lox.stats");
+    private static final boolean explicitStack = Boolean.getBoolean("lox.explicitStack");
+    private static final boolean parallel = Boolean.getBoolean("lox.parallel");
+    private static final boolean memoize = Boolean.getBoolean("lox.memoize");
+    private static final boolean lazyBlocks = Boolean.getBoolean("lox.lazyBlocks");
+    private static final boolean sealedNodes = Boolean.getBoolean("lox.sealedNodes");
+    private static final boolean hashCons = Boolean.getBoolean("lox.hashCons");
+    // The optimizer passes recurse over the tree, so they are skipped for deeper expressions.
+    private static final int MAX_OPTIMIZED_DEPTH = 2000;
+    private static final ExecutionLimits limits = new ExecutionLimits(
+            Long.getLong("lox.maxSteps", Long.MAX_VALUE),
+            Long.getLong("lox.yieldInterval", 0),
+            Long.getLong("lox.maxBytes", Long.MAX_VALUE));
 
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
+        ErrorReporter reporter = new ErrorReporter();
+        run(new String(bytes, Charset.defaultCharset()), reporter, true);
+        if (reporter.hadError) System.exit(65);
         if (hadRuntimeError) System.exit(70);
     }
 
@@ -28,47 +40,104 @@ public class Lox {
             System.out.println("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            run(line, new ErrorReporter(), false);
         }
     }
 
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        Interpreter interpreter = new Interpreter();
-
-        if (hadError) return;
-        interpreter.interpret(statements);
+    private static void checkTree(String root) throws IOException {
+        boolean ok = true;
+        SyntaxChecker checker = new SyntaxChecker(ForkJoinPool.commonPool());
+        for (SyntaxChecker.Result result : checker.checkTree(Paths.get(root))) {
+            SyntaxChecker.write(result, System.out);
+            ok &= result.ok();
+        }
+        if (!ok) System.exit(65);
     }
 
-    static void error(int line, String message) {
-        report(line, " at end", message);
-    }
+    // Only whole files get dead code elimination and the parallel executor. Each REPL line runs in an
+    // interpreter of its own, so it is too short for either to pay off, and removing its unread
+    // declarations would go wrong as soon as the prompt kept its globals from one line to the next.
+    private static void run(String source, ErrorReporter reporter, boolean wholeProgram) {
+        Scanner scanner = new Scanner(source, reporter);
+        List<Token> tokens = scanner.scanTokens();
+        Parser parser = new Parser(tokens, reporter, explicitStack, lazyBlocks);
+        List<Stmt> statements = parser.parse();
+        Interpreter interpreter = new Interpreter(limits, explicitStack);
+        interpreter.install(HostFunctions.standard());
 
-    static void error(Token token, String message) {
-        if (token.type == EOF) {
-            report(token.line, " at end", message);
+        if (reporter.hadError) return;
+        boolean optimize = parser.maxDepth() <= MAX_OPTIMIZED_DEPTH;
+        // Skipped block bodies hide their reads from dead code elimination.
+        if (wholeProgram && optimize && !lazyBlocks) {
+            DeadCodeEliminator eliminator = new DeadCodeEliminator();
+            statements = eliminator.eliminate(statements);
+            if (printStats) {
+                System.err.println("[stats] removed declarations: " + eliminator.removedDeclarations()
+                        + ", expressions: " + eliminator.removedExpressions()
+                        + ", stores: " + eliminator.removedStores());
+            }
+        }
+        if (optimize) {
+            Fuser fuser = new Fuser();
+            statements = fuser.fuse(statements);
+            if (printStats) System.err.println("[stats] fused nodes: " + fuser.fusions());
+        }
+        Memoizer memoizer = null;
+        if (memoize && optimize) {
+            memoizer = new Memoizer();
+            statements = memoizer.memoize(statements);
+        }
+        // Step and memory budgets are defined over one sequential order, so bounded runs stay sequential.
+        boolean runParallel = parallel && wholeProgram && !limits.isBounded();
+        // Conversion recurses like the optimizer passes, and would parse every lazy block up front.
+        boolean runNodes =
+                !runParallel && sealedNodes && optimize && !lazyBlocks && !limits.isBounded();
+        // Conversion copies every node, which would undo the sharing.
+        if (hashCons && optimize && !runNodes) {
+            HashConser conser = new HashConser();
+            statements = conser.intern(statements);
+            interpreter.sharedTokenLines(conser.lines());
+            if (printStats) {
+                System.err.println("[stats] hash-consed expression nodes: " + conser.nodes()
+                        + " -> " + conser.distinct());
+            }
+        }
+        if (runParallel) {
+            ParallelExecutor executor = new ParallelExecutor(ForkJoinPool.commonPool());
+            interpreter.interpret(statements, executor);
+            if (printStats) System.err.println("[stats] parallel " + executor.describe());
+        } else if (runNodes) {
+            interpreter.interpretNodes(new NodeConverter().convert(statements));
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            interpreter.interpret(statements);
+        }
+        if (printStats) {
+            MemoryUsage memory = interpreter.memory();
+            System.err.println("[stats] allocated bytes: " + memory.allocatedBytes()
+                    + " (strings: " + memory.stringBytes
+                    + ", numbers: " + memory.numberBytes
+                    + ", arrays: " + memory.arrayBytes
+                    + ", environments: " + memory.environmentBytes
+                    + "), retained bytes: " + memory.retainedBytes
+                    + ", peak retained: " + memory.peakRetainedBytes);
+            if (memoizer != null) memoizer.report(System.err);
+            if (lazyBlocks) {
+                System.err.println("[stats] lazy blocks: " + parser.deferredBlocks()
+                        + ", parsed on first run: " + parser.loadedBlocks());
+            }
         }
-    }
-
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
     }
 
     static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        System.err.println(error.getMessage() + "\n[line " + error.line() + "]");
         hadRuntimeError = true;
     }
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        if (args.length == 2 && args[0].equals("check")) {
+            checkTree(args[1]);
+        } else if (args.length > 1) {
+            System.out.println("Usage: jlox [script] | jlox check <directory>");
             System.exit(64);
         } else if (args.length == 1) {
             runFile(args[0]);
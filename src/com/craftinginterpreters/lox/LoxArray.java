@@ -0,0 +1,80 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-length array value. Storage starts as a packed {@code double[]} while every element is a
+ * number and switches to an {@code Object[]} the first time anything else is stored, so numeric data
+ * is held without a box per element.
+ */
+public final class LoxArray {
+  private double[] numbers;
+  private Object[] values;
+
+  LoxArray(double[] numbers) {
+    this.numbers = numbers;
+  }
+
+  LoxArray(Object[] values) {
+    this.values = values;
+  }
+
+  public int length() {
+    return numbers != null ? numbers.length : values.length;
+  }
+
+  boolean isPacked() {
+    return numbers != null;
+  }
+
+  public Object get(int index) {
+    if (numbers != null) return numbers[index];
+    return values[index];
+  }
+
+  void set(int index, Object value) {
+    if (numbers != null) {
+      if (value instanceof Double) {
+        numbers[index] = (double) value;
+        return;
+      }
+      // The first non-number moves the whole array to boxed storage for good.
+      values = new Object[numbers.length];
+      for (int i = 0; i < numbers.length; i++) {
+        values[i] = numbers[i];
+      }
+      numbers = null;
+    }
+    values[index] = value;
+  }
+
+  /** Estimated size of the storage array, not counting boxed elements, on MemoryUsage's basis. */
+  long estimatedBytes() {
+    if (numbers != null) return packedBytes(numbers.length);
+    return boxedBytes(values.length);
+  }
+
+  static long packedBytes(int length) {
+    return 16 + 8L * length;
+  }
+
+  static long boxedBytes(int length) {
+    return 16 + 4L * length;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < length(); i++) {
+      if (i > 0) builder.append(", ");
+      builder.append(Interpreter.stringify(get(i)));
+    }
+    return builder.append("]").toString();
+  }
+
+  static LoxArray filled(int length, double value) {
+    double[] numbers = new double[length];
+    Arrays.fill(numbers, value);
+    return new LoxArray(numbers);
+  }
+}
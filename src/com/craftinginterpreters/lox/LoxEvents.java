@@ -0,0 +1,241 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder events for the scanner, parser and interpreter phases. Each phase calls {@code
+ * begin()}/{@code end()} around its work and only fills in the payload when {@code shouldCommit()}
+ * says the event is being recorded, so a disabled event costs next to nothing.
+ */
+final class LoxEvents {
+  private LoxEvents() {}
+
+  @Name("lox.Scan")
+  @Label("Lox Scan")
+  @Category("Lox")
+  @StackTrace(false)
+  static class Scan extends Event {
+    @Label("Source Length")
+    @Description("Length of the source in characters")
+    int sourceLength;
+
+    @Label("Token Count")
+    int tokenCount;
+  }
+
+  @Name("lox.Parse")
+  @Label("Lox Parse")
+  @Category("Lox")
+  @StackTrace(false)
+  static class Parse extends Event {
+    @Label("Token Count")
+    int tokenCount;
+
+    @Label("Node Count")
+    @Description("Number of Stmt and Expr nodes produced, 0 if parsing failed")
+    int nodeCount;
+  }
+
+  @Name("lox.Interpret")
+  @Label("Lox Interpret")
+  @Category("Lox")
+  @StackTrace(false)
+  static class Interpret extends Event {
+    @Label("Statements Executed")
+    long statementsExecuted;
+
+    @Label("Environments Allocated")
+    long environmentsAllocated;
+
+    @Label("Uncached Lookups")
+    @Description("Variables resolved by walking the environment chain, not from a cached cell")
+    long uncachedLookups;
+
+    @Label("Chain Hops")
+    long chainHops;
+
+    @Label("Bytes Allocated")
+    @Description("Estimated bytes of strings, boxed numbers and environments allocated")
+    @DataAmount(DataAmount.BYTES)
+    long bytesAllocated;
+
+    @Label("Peak Bytes Retained")
+    @Description("Estimated peak bytes held by live environments")
+    @DataAmount(DataAmount.BYTES)
+    long peakBytesRetained;
+  }
+
+  @Name("lox.RuntimeError")
+  @Label("Lox Runtime Error")
+  @Category("Lox")
+  @StackTrace(false)
+  static class ErrorEvent extends Event {
+    @Label("Message")
+    String message;
+
+    @Label("Line")
+    int line;
+  }
+
+  // Counts with an explicit work list, so trees from the explicit-stack parser cannot overflow it.
+  static int countNodes(List<Stmt> statements) {
+    if (statements == null) return 0;
+    NodeCounter counter = new NodeCounter();
+    counter.pending.addAll(statements);
+    while (!counter.pending.isEmpty()) {
+      Object node = counter.pending.pop();
+      counter.count++;
+      if (node instanceof Stmt) {
+        ((Stmt) node).accept(counter);
+      } else {
+        ((Expr) node).accept(counter);
+      }
+    }
+    return counter.count;
+  }
+
+  private static class NodeCounter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    final ArrayDeque<Object> pending = new ArrayDeque<>();
+    int count = 0;
+
+    private void count(Expr expr) {
+      pending.push(expr);
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+      count(expr.left);
+      count(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+      count(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+      count(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+      count(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitVarLiteralExpr(Expr.VarLiteral expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitVarVarExpr(Expr.VarVar expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitAddAssignExpr(Expr.AddAssign expr) {
+      return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+      count(expr.callee);
+      for (Expr argument : expr.arguments) {
+        count(argument);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+      for (Expr element : expr.elements) {
+        count(element);
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+      count(expr.object);
+      count(expr.index);
+      return null;
+    }
+
+    @Override
+    public Void visitIndexSetExpr(Expr.IndexSet expr) {
+      count(expr.object);
+      count(expr.index);
+      count(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visitMemoExpr(Expr.Memo expr) {
+      count(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+      pending.addAll(stmt.statements);
+      return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+      count(stmt.expr);
+      return null;
+    }
+
+    @Override
+    public Void visitPrintExprStmt(Stmt.PrintExpr stmt) {
+      count(stmt.expr);
+      return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+      count(stmt.condition);
+      pending.push(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+      if (stmt.initializer != null) pending.push(stmt.initializer);
+      if (stmt.condition != null) count(stmt.condition);
+      if (stmt.increment != null) count(stmt.increment);
+      pending.push(stmt.body);
+      return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+      if (stmt.initializer != null) count(stmt.initializer);
+      return null;
+    }
+  }
+}
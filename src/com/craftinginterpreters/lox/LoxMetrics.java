@@ -0,0 +1,73 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide counters behind {@link LoxMetricsMBean}. The interpreter counts into plain fields
+ * while it runs and adds them here once per {@link Interpreter#interpret}, so the hot paths never
+ * touch shared state.
+ */
+public class LoxMetrics implements LoxMetricsMBean {
+  static final LoxMetrics INSTANCE = new LoxMetrics();
+
+  static {
+    try {
+      ManagementFactory.getPlatformMBeanServer()
+          .registerMBean(INSTANCE, new ObjectName("com.craftinginterpreters.lox:type=Metrics"));
+    } catch (JMException | SecurityException e) {
+      // Metrics stay available in-process even if another copy is already registered.
+    }
+  }
+
+  private final LongAdder scriptsRun = new LongAdder();
+  private final LongAdder statementsExecuted = new LongAdder();
+  private final LongAdder environmentsAllocated = new LongAdder();
+  private final LongAdder uncachedLookups = new LongAdder();
+  private final LongAdder chainHops = new LongAdder();
+  private final LongAdder runtimeErrors = new LongAdder();
+
+  private LoxMetrics() {}
+
+  void record(
+      long statements, long environments, long lookups, long hops, boolean failed) {
+    scriptsRun.increment();
+    statementsExecuted.add(statements);
+    environmentsAllocated.add(environments);
+    uncachedLookups.add(lookups);
+    chainHops.add(hops);
+    if (failed) runtimeErrors.increment();
+  }
+
+  @Override
+  public long getScriptsRun() {
+    return scriptsRun.sum();
+  }
+
+  @Override
+  public long getStatementsExecuted() {
+    return statementsExecuted.sum();
+  }
+
+  @Override
+  public long getEnvironmentsAllocated() {
+    return environmentsAllocated.sum();
+  }
+
+  @Override
+  public long getUncachedLookups() {
+    return uncachedLookups.sum();
+  }
+
+  @Override
+  public long getChainHops() {
+    return chainHops.sum();
+  }
+
+  @Override
+  public long getRuntimeErrors() {
+    return runtimeErrors.sum();
+  }
+}
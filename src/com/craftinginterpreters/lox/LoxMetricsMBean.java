@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+/** Cumulative interpreter counters, exposed over JMX as {@code com.craftinginterpreters.lox:type=Metrics}. */
+public interface LoxMetricsMBean {
+  long getScriptsRun();
+
+  long getStatementsExecuted();
+
+  long getEnvironmentsAllocated();
+
+  /**
+   * Variables resolved by walking the environment chain. Reads and stores of a global whose cell is
+   * already cached on the AST node skip the walk and are not counted.
+   */
+  long getUncachedLookups();
+
+  long getChainHops();
+
+  long getRuntimeErrors();
+}
@@ -0,0 +1,232 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Post-parse pass that wraps each maximal pure expression in an {@link Expr.Memo}, which the
+ * interpreter answers from its last result while none of the variables it reads has been stored to.
+ * Pure means built only from literals, variable reads and operators: no assignment, call or array
+ * access, whose results can change without a variable changing.
+ *
+ * <p>A pure subtree of a larger pure expression is wrapped as well when it reads fewer variables, so
+ * it can still hit while the variables only the whole reads keep changing. Subtrees with fewer than
+ * {@link #MIN_OPERATORS} operators are left alone, since checking their variables costs about as
+ * much as evaluating them.
+ */
+class Memoizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private static final int MIN_OPERATORS = 2;
+
+    private final List<Expr.Memo> memos = new ArrayList<>();
+    // Whether the expression last visited is pure, how many operators it has and which variables it
+    // reads, in evaluation order.
+    private boolean pure;
+    private int operators;
+    private Map<String, Token> reads;
+
+    List<Stmt> memoize(List<Stmt> statements) {
+        List<Stmt> memoized = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            memoized.add(stmt.accept(this));
+        }
+        return memoized;
+    }
+
+    /** Writes the hits and misses of every memoized expression that was evaluated. */
+    void report(PrintStream out) {
+        AstPrinter printer = new AstPrinter();
+        for (Expr.Memo memo : memos) {
+            long evaluations = memo.hits + memo.misses;
+            if (evaluations == 0) continue;
+            out.printf(
+                    "[stats] memo line %d %s: hits %d, misses %d, hit rate %.1f%%%n",
+                    Interpreter.tokenOf(memo).line,
+                    memo.expression.accept(printer),
+                    memo.hits,
+                    memo.misses,
+                    100.0 * memo.hits / evaluations);
+        }
+    }
+
+    // Rewrites an expression whose parent is not pure, so a pure result is wrapped here.
+    private Expr rewrite(Expr expr) {
+        Expr rewritten = expr.accept(this);
+        if (!pure) return rewritten;
+        return wrap(rewritten, operators, reads);
+    }
+
+    private Expr wrap(Expr expr, int operators, Map<String, Token> reads) {
+        if (operators < MIN_OPERATORS) return expr;
+        Expr.Memo memo = new Expr.Memo(expr, new ArrayList<>(reads.values()));
+        memos.add(memo);
+        return memo;
+    }
+
+    private Expr pureLeaf(Expr expr, int operators, Token... names) {
+        pure = true;
+        this.operators = operators;
+        reads = new LinkedHashMap<>();
+        for (Token name : names) {
+            reads.putIfAbsent(name.lexeme, name);
+        }
+        return expr;
+    }
+
+    private Expr impure(Expr expr) {
+        pure = false;
+        reads = null;
+        return expr;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = expr.left.accept(this);
+        boolean leftPure = pure;
+        int leftOperators = operators;
+        Map<String, Token> leftReads = reads;
+        Expr right = expr.right.accept(this);
+        if (leftPure && pure) {
+            Map<String, Token> combined = new LinkedHashMap<>(leftReads);
+            reads.forEach(combined::putIfAbsent);
+            if (leftReads.size() < combined.size()) left = wrap(left, leftOperators, leftReads);
+            if (reads.size() < combined.size()) right = wrap(right, operators, reads);
+            operators += leftOperators + 1;
+            reads = combined;
+            if (left == expr.left && right == expr.right) return expr;
+            return new Expr.Binary(left, expr.operator, right);
+        }
+        // Only one side is pure, so that side is as large as a pure subtree here gets.
+        if (leftPure) {
+            left = wrap(left, leftOperators, leftReads);
+        } else if (pure) {
+            right = wrap(right, operators, reads);
+        }
+        return impure(new Expr.Binary(left, expr.operator, right));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr inner = expr.expression.accept(this);
+        if (inner == expr.expression) return expr;
+        return new Expr.Grouping(inner);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return pureLeaf(expr, 0);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = expr.right.accept(this);
+        if (pure) operators++;
+        if (right == expr.right) return expr;
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return impure(new Expr.Assign(expr.name, rewrite(expr.value)));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return pureLeaf(expr, 0, expr.name);
+    }
+
+    @Override
+    public Expr visitVarLiteralExpr(Expr.VarLiteral expr) {
+        return pureLeaf(expr, 1, expr.name);
+    }
+
+    @Override
+    public Expr visitVarVarExpr(Expr.VarVar expr) {
+        return pureLeaf(expr, 1, expr.left, expr.right);
+    }
+
+    @Override
+    public Expr visitAddAssignExpr(Expr.AddAssign expr) {
+        return impure(expr);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(rewrite(argument));
+        }
+        return impure(new Expr.Call(rewrite(expr.callee), expr.paren, arguments));
+    }
+
+    @Override
+    public Expr visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+        List<Expr> elements = new ArrayList<>(expr.elements.size());
+        for (Expr element : expr.elements) {
+            elements.add(rewrite(element));
+        }
+        return impure(new Expr.ArrayLiteral(expr.bracket, elements));
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        return impure(new Expr.Index(rewrite(expr.object), expr.bracket, rewrite(expr.index)));
+    }
+
+    @Override
+    public Expr visitIndexSetExpr(Expr.IndexSet expr) {
+        return impure(new Expr.IndexSet(
+                rewrite(expr.object), expr.bracket, rewrite(expr.index), rewrite(expr.value)));
+    }
+
+    @Override
+    public Expr visitMemoExpr(Expr.Memo expr) {
+        return impure(expr);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        // Unparsed until it first runs, and never memoized after.
+        if (stmt.deferred != null) return stmt;
+        return new Stmt.Block(stmt.first, memoize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expr = rewrite(stmt.expr);
+        if (expr == stmt.expr) return stmt;
+        return new Stmt.Expression(stmt.first, expr);
+    }
+
+    @Override
+    public Stmt visitPrintExprStmt(Stmt.PrintExpr stmt) {
+        Expr expr = rewrite(stmt.expr);
+        if (expr == stmt.expr) return stmt;
+        return new Stmt.PrintExpr(stmt.first, expr);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        return new Stmt.While(stmt.first, rewrite(stmt.condition), stmt.body.accept(this));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        return new Stmt.For(
+                stmt.first,
+                stmt.initializer == null ? null : stmt.initializer.accept(this),
+                stmt.condition == null ? null : rewrite(stmt.condition),
+                stmt.increment == null ? null : rewrite(stmt.increment),
+                stmt.body.accept(this));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+        Expr initializer = rewrite(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        return new Stmt.Var(stmt.first, stmt.name, initializer);
+    }
+}
@@ -0,0 +1,101 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Approximate heap accounting for one {@link Interpreter}. Sizes assume a 64-bit JVM with compressed
+ * references and compact Latin-1 strings; they are meant for sizing heaps and finding the hot
+ * allocators, not for exact measurement.
+ *
+ * <p>Allocated bytes are counted per execution and split by kind. Retained bytes are what the live
+ * environments hold on to: an environment and its cells, plus the strings and boxed numbers stored
+ * in them. They persist across executions for as long as the globals do. Arrays are shared by
+ * reference, so their storage counts as allocated when it is created but not against any one cell.
+ */
+class MemoryUsage {
+  static final long BOXED_NUMBER_BYTES = 16;
+  static final long ENVIRONMENT_BYTES = 80;
+  static final long CELL_BYTES = 64;
+  private static final long STRING_HEADER_BYTES = 40;
+
+  private final long limit;
+
+  long stringBytes = 0;
+  long numberBytes = 0;
+  long arrayBytes = 0;
+  long environmentBytes = 0;
+  long retainedBytes = 0;
+  long peakRetainedBytes = 0;
+
+  MemoryUsage(long limit) {
+    this.limit = limit;
+  }
+
+  static long stringSize(int length) {
+    return STRING_HEADER_BYTES + length;
+  }
+
+  static long sizeOf(Object value) {
+    if (value instanceof String) return stringSize(((String) value).length());
+    if (value instanceof Double) return BOXED_NUMBER_BYTES;
+    return 0;
+  }
+
+  long allocatedBytes() {
+    return stringBytes + numberBytes + arrayBytes + environmentBytes;
+  }
+
+  void reset() {
+    stringBytes = 0;
+    numberBytes = 0;
+    arrayBytes = 0;
+    environmentBytes = 0;
+    peakRetainedBytes = retainedBytes;
+  }
+
+  void retain(long bytes) {
+    retainedBytes += bytes;
+    if (retainedBytes > peakRetainedBytes) peakRetainedBytes = retainedBytes;
+  }
+
+  /**
+   * Adds the usage of a worker whose counts started from zero, as if it had run after everything
+   * counted here so far.
+   */
+  void merge(MemoryUsage other) {
+    stringBytes += other.stringBytes;
+    numberBytes += other.numberBytes;
+    arrayBytes += other.arrayBytes;
+    environmentBytes += other.environmentBytes;
+    peakRetainedBytes = Math.max(peakRetainedBytes, retainedBytes + other.peakRetainedBytes);
+    retain(other.retainedBytes);
+  }
+
+  void release(long bytes) {
+    retainedBytes -= bytes;
+  }
+
+  /** Whether holding {@code bytes} more on top of what is retained would exceed the limit. */
+  boolean exceeds(long bytes) {
+    return retainedBytes + bytes > limit;
+  }
+
+  String limitMessage() {
+    return "Execution exceeded its memory limit of " + limit + " bytes.";
+  }
+
+  /**
+   * Charges array storage of {@code bytes} created outside the interpreter, by a host function,
+   * before it is allocated.
+   */
+  void allocateArray(long bytes) {
+    if (exceeds(bytes)) throw new LimitExceeded(limitMessage());
+    arrayBytes += bytes;
+  }
+
+  /** Thrown by {@link #allocateArray}; the interpreter reports it as a runtime error at the call. */
+  @SuppressWarnings("serial")
+  static final class LimitExceeded extends RuntimeException {
+    LimitExceeded(String message) {
+      super(message);
+    }
+  }
+}
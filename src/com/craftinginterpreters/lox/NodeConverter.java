@@ -0,0 +1,143 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies a parsed program into the sealed {@link ExprNode} and {@link StmtNode} records that {@link
+ * Interpreter#interpretNodes} runs. Cache fields have no counterpart in the records and are dropped.
+ * Blocks left unparsed by the lazy pre-parse are parsed here, since a record cannot be filled in
+ * later.
+ */
+class NodeConverter implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    List<StmtNode> convert(List<Stmt> statements) {
+        List<StmtNode> nodes = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            nodes.add(stmt.accept(this));
+        }
+        return nodes;
+    }
+
+    private List<ExprNode> convertAll(List<Expr> exprs) {
+        List<ExprNode> nodes = new ArrayList<>(exprs.size());
+        for (Expr expr : exprs) {
+            nodes.add(expr.accept(this));
+        }
+        return nodes;
+    }
+
+    private ExprNode convert(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private StmtNode convert(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        return new ExprNode.Binary(convert(expr.left), expr.operator, convert(expr.right));
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return new ExprNode.Grouping(convert(expr.expression));
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new ExprNode.Literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        return new ExprNode.Unary(expr.operator, convert(expr.right));
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        return new ExprNode.Assign(expr.name, convert(expr.value));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return new ExprNode.Variable(expr.name);
+    }
+
+    @Override
+    public ExprNode visitVarLiteralExpr(Expr.VarLiteral expr) {
+        return new ExprNode.VarLiteral(expr.name, expr.operator, expr.value);
+    }
+
+    @Override
+    public ExprNode visitVarVarExpr(Expr.VarVar expr) {
+        return new ExprNode.VarVar(expr.left, expr.operator, expr.right);
+    }
+
+    @Override
+    public ExprNode visitAddAssignExpr(Expr.AddAssign expr) {
+        return new ExprNode.AddAssign(expr.name, expr.source, expr.operator, expr.value);
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        return new ExprNode.Call(convert(expr.callee), expr.paren, convertAll(expr.arguments));
+    }
+
+    @Override
+    public ExprNode visitArrayLiteralExpr(Expr.ArrayLiteral expr) {
+        return new ExprNode.ArrayLiteral(expr.bracket, convertAll(expr.elements));
+    }
+
+    @Override
+    public ExprNode visitIndexExpr(Expr.Index expr) {
+        return new ExprNode.Index(convert(expr.object), expr.bracket, convert(expr.index));
+    }
+
+    @Override
+    public ExprNode visitIndexSetExpr(Expr.IndexSet expr) {
+        return new ExprNode.IndexSet(
+                convert(expr.object), expr.bracket, convert(expr.index), convert(expr.value));
+    }
+
+    @Override
+    public ExprNode visitMemoExpr(Expr.Memo expr) {
+        return new ExprNode.Memo(convert(expr.expression), expr.reads);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.deferred != null && !stmt.deferred.load(stmt)) throw new Parser.BlockSyntaxError();
+        return new StmtNode.Block(stmt.first, convert(stmt.statements));
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(stmt.first, convert(stmt.expr));
+    }
+
+    @Override
+    public StmtNode visitPrintExprStmt(Stmt.PrintExpr stmt) {
+        return new StmtNode.PrintExpr(stmt.first, convert(stmt.expr));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        return new StmtNode.Var(stmt.first, stmt.name, convert(stmt.initializer));
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(stmt.first, convert(stmt.condition), convert(stmt.body));
+    }
+
+    @Override
+    public StmtNode visitForStmt(Stmt.For stmt) {
+        return new StmtNode.For(
+                stmt.first,
+                convert(stmt.initializer),
+                convert(stmt.condition),
+                convert(stmt.increment),
+                convert(stmt.body));
+    }
+}
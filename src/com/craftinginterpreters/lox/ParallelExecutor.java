@@ -0,0 +1,116 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the top-level statements of a program on a pool, starting each one as soon as the statements
+ * it depends on, according to a {@link DependencyGraph}, have finished. Every statement runs on its
+ * own worker {@link Interpreter} with buffered output. The calling thread then walks the results in
+ * program order, writing output and merging counters, and stops at the first runtime error, just as
+ * a sequential run would.
+ */
+class ParallelExecutor {
+  private final ExecutorService pool;
+
+  private DependencyGraph graph;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final LongAdder busyNanos = new LongAdder();
+  private long wallNanos = 0;
+
+  ParallelExecutor(ExecutorService pool) {
+    this.pool = pool;
+  }
+
+  private static class Outcome {
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Interpreter worker;
+    Throwable failure;
+  }
+
+  void execute(Interpreter interpreter, List<Stmt> statements) {
+    long start = System.nanoTime();
+    graph = DependencyGraph.of(statements);
+    for (String name : graph.declaredGlobals()) {
+      interpreter.reserveGlobal(name);
+    }
+
+    // Statements after a failed one never run sequentially, so once one fails later ones are skipped.
+    AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+    List<CompletableFuture<Outcome>> outcomes = new ArrayList<>(statements.size());
+    for (int i = 0; i < statements.size(); i++) {
+      int index = i;
+      Stmt stmt = statements.get(i);
+      int[] predecessors = graph.predecessors(i);
+      CompletableFuture<?>[] waitFor = new CompletableFuture<?>[predecessors.length];
+      for (int k = 0; k < predecessors.length; k++) {
+        waitFor[k] = outcomes.get(predecessors[k]);
+      }
+      outcomes.add(
+          CompletableFuture.allOf(waitFor)
+              .thenApplyAsync(ignored -> run(interpreter, stmt, index, firstFailure), pool));
+    }
+
+    try {
+      for (CompletableFuture<Outcome> future : outcomes) {
+        Outcome outcome = future.join();
+        if (outcome.worker != null) interpreter.merge(outcome.worker);
+        byte[] output = outcome.output.toByteArray();
+        System.out.write(output, 0, output.length);
+        if (outcome.failure instanceof RuntimeError) throw (RuntimeError) outcome.failure;
+        if (outcome.failure instanceof RuntimeException) throw (RuntimeException) outcome.failure;
+        if (outcome.failure instanceof Error) throw (Error) outcome.failure;
+      }
+    } finally {
+      wallNanos = System.nanoTime() - start;
+    }
+  }
+
+  private Outcome run(Interpreter interpreter, Stmt stmt, int index, AtomicInteger firstFailure) {
+    Outcome outcome = new Outcome();
+    if (firstFailure.get() < index) return outcome;
+    long start = threads.getCurrentThreadCpuTime();
+    outcome.worker = interpreter.worker(new PrintStream(outcome.output));
+    try {
+      outcome.worker.execute(stmt);
+    } catch (Throwable failure) {
+      outcome.failure = failure;
+      firstFailure.accumulateAndGet(index, Math::min);
+    }
+    busyNanos.add(threads.getCurrentThreadCpuTime() - start);
+    return outcome;
+  }
+
+  /** Statements per step on the longest dependency chain: the best speedup the program allows. */
+  double availableParallelism() {
+    int path = graph.criticalPath();
+    return path == 0 ? 1 : (double) graph.size() / path;
+  }
+
+  /**
+   * CPU time spent running statements divided by wall time, or how many ran at once on average.
+   * CPU time rather than elapsed time, so workers that were runnable but descheduled do not count.
+   */
+  double achievedParallelism() {
+    return wallNanos == 0 ? 1 : (double) busyNanos.sum() / wallNanos;
+  }
+
+  String describe() {
+    return String.format(
+        "statements: %d, longest chain: %d, widest level: %d, available parallelism: %.2f,"
+            + " achieved parallelism: %.2f",
+        graph.size(),
+        graph.criticalPath(),
+        graph.widestLevel(),
+        availableParallelism(),
+        achievedParallelism());
+  }
+}
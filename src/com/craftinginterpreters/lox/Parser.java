@@ -1,42 +1,302 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
 public class Parser {
     private final List<Token> tokens;
+    private final ErrorReporter reporter;
+    private final boolean explicitStack;
     private int current = 0;
 
+    // Binding levels of the expression parsers. Every binary level is left-associative except
+    // assignment. The levels below ASSIGNMENT only appear on the explicit stack, for a bracket that
+    // is still open.
+    private static final int GROUP = 0;
+    private static final int CALL = 1;
+    private static final int INDEX = 2;
+    private static final int ARRAY = 3;
+    private static final int ASSIGNMENT = 4;
+    private static final int EQUALITY = 5;
+    private static final int COMPARISON = 6;
+    private static final int TERM = 7;
+    private static final int FACTOR = 8;
+    private static final int UNARY = 9;
+
+    // The binding level of each binary operator, indexed by TokenType ordinal, or -1 for tokens that
+    // are not one.
+    private static final int[] binaryLevels = new int[TokenType.values().length];
+
+    static {
+        Arrays.fill(binaryLevels, -1);
+        binaryLevels[EQUAL.ordinal()] = ASSIGNMENT;
+        binaryLevels[BANG_EQUAL.ordinal()] = EQUALITY;
+        binaryLevels[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        binaryLevels[GREATER.ordinal()] = COMPARISON;
+        binaryLevels[GREATER_EQUAL.ordinal()] = COMPARISON;
+        binaryLevels[LESS.ordinal()] = COMPARISON;
+        binaryLevels[LESS_EQUAL.ordinal()] = COMPARISON;
+        binaryLevels[PLUS.ordinal()] = TERM;
+        binaryLevels[MINUS.ordinal()] = TERM;
+        binaryLevels[STAR.ordinal()] = FACTOR;
+        binaryLevels[SLASH.ordinal()] = FACTOR;
+    }
+
+    private Token[] operators = new Token[16];
+    private int[] levels = new int[16];
+    // For an open bracket on the operator stack, the operand count when it was opened.
+    private int[] bases = new int[16];
+    private int operatorCount = 0;
+    private int openGroups = 0;
+    private Expr[] operands = new Expr[16];
+    private int[] depths = new int[16];
+    private int operandCount = 0;
+    private int maxDepth = 0;
+    // Spans of the statements parsed so far at the current nesting level, when they are recorded for
+    // incremental reparsing.
+    private List<StatementSpan> spans;
+    // With lazy blocks, the index of the closing brace that matches each opening brace, or -1 if
+    // there is none. Null when every block is parsed up front.
+    private final int[] closingBraces;
+    private int deferredBlocks = 0;
+    private int loadedBlocks = 0;
+
     private static class ParseError extends RuntimeException {
     }
 
+    /**
+     * Thrown when a block left unparsed by the lazy pre-parse turns out to have a syntax error as it
+     * is about to run. The error has already been reported.
+     */
+    @SuppressWarnings("serial")
+    static class BlockSyntaxError extends RuntimeException {
+    }
+
+    /**
+     * The body of a block skipped by the lazy pre-parse: where it starts and the parser that will
+     * finish it, once the block first runs.
+     */
+    static final class Deferred {
+        private final Parser parser;
+        private final int start;
+        private boolean failed = false;
+
+        private Deferred(Parser parser, int start) {
+            this.parser = parser;
+            this.start = start;
+        }
+
+        /**
+         * Parses the body into {@code block}'s statement list. Returns false after a syntax error,
+         * which is reported the first time only.
+         */
+        boolean load(Stmt.Block block) {
+            if (failed) return false;
+            List<Stmt> statements = parser.blockAt(start);
+            if (statements == null) {
+                failed = true;
+                return false;
+            }
+            block.statements.addAll(statements);
+            block.deferred = null;
+            parser.loadedBlocks++;
+            return true;
+        }
+    }
+
     Parser(List<Token> tokens) {
+        this(tokens, new ErrorReporter());
+    }
+
+    Parser(List<Token> tokens, ErrorReporter reporter) {
+        this(tokens, reporter, false);
+    }
+
+    /**
+     * With {@code explicitStack} set, expressions are parsed with heap-allocated operator and operand
+     * stacks instead of recursive descent, so nesting depth is not limited by the Java stack.
+     */
+    Parser(List<Token> tokens, ErrorReporter reporter, boolean explicitStack) {
+        this(tokens, reporter, explicitStack, false);
+    }
+
+    /**
+     * With {@code lazyBlocks} set, a block whose braces match is only skipped over, in one pass over
+     * the tokens, and its body is parsed when {@link Deferred#load} is called the first time the
+     * block runs. Syntax errors in a body are reported then rather than up front. A block whose
+     * braces do not match is parsed right away, which reports the error.
+     */
+    Parser(List<Token> tokens, ErrorReporter reporter, boolean explicitStack, boolean lazyBlocks) {
         this.tokens = tokens;
+        this.reporter = reporter;
+        this.explicitStack = explicitStack;
+        this.closingBraces = lazyBlocks ? matchBraces(tokens) : null;
+    }
+
+    private static int[] matchBraces(List<Token> tokens) {
+        int[] closing = new int[tokens.size()];
+        int[] open = new int[16];
+        int depth = 0;
+        for (int i = 0; i < closing.length; i++) {
+            TokenType type = tokens.get(i).type;
+            if (type == LEFT_BRACE) {
+                closing[i] = -1;
+                if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+                open[depth++] = i;
+            } else if (type == RIGHT_BRACE && depth > 0) {
+                closing[open[--depth]] = i;
+            }
+        }
+        return closing;
+    }
+
+    /** Deepest expression tree built by the explicit-stack parser, 0 in recursive mode. */
+    int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Parses one declaration starting at token {@code index} and records its span, with those of the
+     * statements nested in it, into {@code spans}. Returns null after a syntax error.
+     */
+    Stmt declarationAt(int index, List<StatementSpan> spans) {
+        current = index;
+        this.spans = spans;
+        try {
+            return declaration();
+        } catch (ParseError error) {
+            return null;
+        } finally {
+            this.spans = null;
+        }
+    }
+
+    /** Index of the next token to parse. */
+    int position() {
+        return current;
+    }
+
+    /** Blocks the lazy pre-parse skipped. */
+    int deferredBlocks() {
+        return deferredBlocks;
+    }
+
+    /** Skipped blocks that have since been parsed. */
+    int loadedBlocks() {
+        return loadedBlocks;
+    }
+
+    // Parses the rest of a block from the token after its opening brace. Deferred blocks are loaded
+    // between statements, so the expression stacks start out empty.
+    private List<Stmt> blockAt(int index) {
+        current = index;
+        operatorCount = 0;
+        operandCount = 0;
+        openGroups = 0;
+        try {
+            return block();
+        } catch (ParseError error) {
+            return null;
+        }
     }
 
     private Stmt declaration() {
+        if (spans != null) return spanned(true);
         if (match(VAR)) {
             return varStatement();
         }
         return statement();
     }
 
+    // Loop bodies are recorded too, so a reparse can descend into a block that is a loop body.
+    private Stmt body() {
+        if (spans != null) return spanned(false);
+        return statement();
+    }
+
+    private Stmt spanned(boolean declaration) {
+        int start = current;
+        List<StatementSpan> outer = spans;
+        spans = new ArrayList<>();
+        try {
+            Stmt stmt = declaration && match(VAR) ? varStatement() : statement();
+            outer.add(new StatementSpan(stmt, start, current, spans));
+            return stmt;
+        } finally {
+            spans = outer;
+        }
+    }
+
     private Stmt statement() {
         if (match(PRINT)) {
             return printStatement();
         }
+        if (match(WHILE)) {
+            return whileStatement();
+        }
+        if (match(FOR)) {
+            return forStatement();
+        }
         if (match(LEFT_BRACE)) {
-            return new Stmt.Block(block());
+            if (closingBraces != null && closingBraces[current - 1] >= 0) return deferredBlock();
+            return new Stmt.Block(previous(), block());
         }
         return expressionStatement();
     }
 
+    // Jumps past the matching brace. The body is filled in by Deferred.load.
+    private Stmt deferredBlock() {
+        Stmt.Block block = new Stmt.Block(previous(), new ArrayList<>());
+        block.deferred = new Deferred(this, current);
+        current = closingBraces[current - 1] + 1;
+        deferredBlocks++;
+        return block;
+    }
+
     private Stmt printStatement() {
+        Token keyword = previous();
         Expr value = expression();
         consume(SEMICOLON, "Expect ; after value");
-        return new Stmt.PrintExpr(value);
+        return new Stmt.PrintExpr(keyword, value);
+    }
+
+    private Stmt whileStatement() {
+        Token keyword = previous();
+        consume(LEFT_PAREN, "Expect '(' after 'while'.");
+        Expr condition = expression();
+        consume(RIGHT_PAREN, "Expect ')' after condition.");
+        Stmt body = body();
+        return new Stmt.While(keyword, condition, body);
+    }
+
+    private Stmt forStatement() {
+        Token keyword = previous();
+        consume(LEFT_PAREN, "Expect '(' after 'for'.");
+        Stmt initializer;
+        if (match(SEMICOLON)) {
+            initializer = null;
+        } else if (match(VAR)) {
+            initializer = varStatement();
+        } else {
+            initializer = expressionStatement();
+        }
+
+        Expr condition = null;
+        if (!check(SEMICOLON)) {
+            condition = expression();
+        }
+        consume(SEMICOLON, "Expect ';' after loop condition.");
+
+        Expr increment = null;
+        if (!check(RIGHT_PAREN)) {
+            increment = expression();
+        }
+        consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+        Stmt body = body();
+        return new Stmt.For(keyword, initializer, condition, increment, body);
     }
 
     private List<Stmt> block() {
@@ -49,116 +309,338 @@ public class Parser {
     }
 
     private Stmt varStatement() {
+        Token keyword = previous();
         Token name = consume(IDENTIFIER, "Expected variable name");
         Expr initializer = null;
         if (match(EQUAL)) {
             initializer = expression();
         }
         consume(SEMICOLON, "Expected variable declaration to end with ;");
-        return new Stmt.Var(name, initializer);
+        return new Stmt.Var(keyword, name, initializer);
     }
 
     private Stmt expressionStatement() {
+        Token first = peek();
         Expr expression = expression();
         consume(SEMICOLON, "Expect ; after value");
-        return new Stmt.Expression(expression);
+        return new Stmt.Expression(first, expression);
     }
 
     private Expr expression() {
+        if (explicitStack) return iterativeExpression();
         return assignment();
     }
 
     private Expr assignment() {
-        Expr expr = equality();
-        if (match(EQUAL)) {
-            Token equal = previous();
-            Expr value = assignment();
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable) expr).name;
-                return new Expr.Assign(name, value);
+        return binary(ASSIGNMENT);
+    }
+
+    // Precedence climbing over binaryLevels: parses an operand, then folds in each following operator
+    // that binds at least as tightly as minLevel. A left-associative operator parses its right
+    // operand one level up, so an operator of its own level ends that operand. Assignment parses its
+    // value at its own level, so it nests to the right. An operand with no operator after it costs
+    // one table lookup, rather than a call per level.
+    private Expr binary(int minLevel) {
+        Expr expr = unary();
+        while (true) {
+            int level = binaryLevels[peek().type.ordinal()];
+            if (level < minLevel) return expr;
+            Token operator = advance();
+            if (level == ASSIGNMENT) {
+                expr = assignTo(expr, operator, binary(ASSIGNMENT));
+            } else {
+                expr = new Expr.Binary(expr, operator, binary(level + 1));
             }
-            throw error(equal, "invalid assignment expression");
         }
-        return expr;
     }
 
-    private Expr equality() {
-        Expr expr = comparison();
-        while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr assignTo(Expr target, Token equal, Expr value) {
+        if (target instanceof Expr.Variable) {
+            return new Expr.Assign(((Expr.Variable) target).name, value);
         }
-        return expr;
+        if (target instanceof Expr.Index) {
+            Expr.Index index = (Expr.Index) target;
+            return new Expr.IndexSet(index.object, index.bracket, index.index, value);
+        }
+        throw error(equal, "invalid assignment expression");
     }
 
-    private Expr comparison() {
-        Expr expr = term();
-        while (match(GREATER_EQUAL, GREATER, LESS, LESS_EQUAL)) {
+    private Expr unary() {
+        if (match(BANG, MINUS)) {
             Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+            Expr right = unary();
+            return new Expr.Unary(operator, right);
         }
-        return expr;
+        return call();
     }
 
-    private Expr term() {
-        Expr expr = factor();
-        while (match(PLUS, MINUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr call() {
+        Expr expr = primary();
+        while (true) {
+            if (match(LEFT_PAREN)) {
+                expr = finishCall(expr);
+            } else if (match(LEFT_BRACKET)) {
+                expr = finishIndex(expr);
+            } else {
+                break;
+            }
         }
         return expr;
     }
 
-    private Expr factor() {
-        Expr expr = unary();
-        while (match(STAR, SLASH)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    private Expr finishIndex(Expr object) {
+        Token bracket = previous();
+        Expr index = expression();
+        consume(RIGHT_BRACKET, "Expect ']' after index.");
+        return new Expr.Index(object, bracket, index);
     }
 
-    private Expr unary() {
-        if (match(BANG, MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+    private Expr finishCall(Expr callee) {
+        List<Expr> arguments = new ArrayList<>();
+        if (!check(RIGHT_PAREN)) {
+            do {
+                if (arguments.size() >= 255) {
+                    error(peek(), "Can't have more than 255 arguments.");
+                }
+                arguments.add(expression());
+            } while (match(COMMA));
         }
-        return primary();
+        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        return new Expr.Call(callee, paren, arguments);
     }
 
     private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NIL)) return new Expr.Literal(null);
-        if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
         if (match(LEFT_PAREN)) {
             Expr expr = expression();
-            System.out.println(new AstPrinter().print(expr));
             consume(RIGHT_PAREN, "Expect ')' after expression.");
             return new Expr.Grouping(expr);
         }
-        if (match(IDENTIFIER)) {
-            return new Expr.Variable(previous());
+        return atom();
+    }
+
+    private Expr atom() {
+        Token token = peek();
+        switch (token.type) {
+            case FALSE -> {
+                advance();
+                return new Expr.Literal(false);
+            }
+            case TRUE -> {
+                advance();
+                return new Expr.Literal(true);
+            }
+            case NIL -> {
+                advance();
+                return new Expr.Literal(null);
+            }
+            case NUMBER, STRING -> {
+                advance();
+                return new Expr.Literal(token.literal);
+            }
+            case IDENTIFIER -> {
+                advance();
+                return new Expr.Variable(token);
+            }
+        }
+        if (match(LEFT_BRACKET)) {
+            Token bracket = previous();
+            List<Expr> elements = new ArrayList<>();
+            if (!check(RIGHT_BRACKET)) {
+                do {
+                    elements.add(expression());
+                } while (match(COMMA));
+            }
+            consume(RIGHT_BRACKET, "Expect ']' after array elements.");
+            return new Expr.ArrayLiteral(bracket, elements);
         }
-        System.out.println(peek().type);
         throw error(peek(), "Expect expression.");
     }
 
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
+    // Operator-precedence parse of one expression with explicit stacks. It builds the same trees
+    // and reports the same errors as binary(). A bracket is an operator too: opening one records
+    // where its contents start on the operand stack, nothing reduces past it, and its closing token
+    // folds the contents into one node. Call arguments, indexes and array elements are parsed in
+    // this loop rather than by recursion, so each expression starts with empty stacks.
+    private Expr iterativeExpression() {
+        operatorCount = 0;
+        operandCount = 0;
+        openGroups = 0;
+        boolean expectOperand = true;
+        while (true) {
+            if (expectOperand) {
+                if (match(BANG, MINUS)) {
+                    pushOperator(previous(), UNARY);
+                    continue;
+                }
+                if (match(LEFT_PAREN)) {
+                    open(previous(), GROUP);
+                    continue;
+                }
+                if (match(LEFT_BRACKET)) {
+                    open(previous(), ARRAY);
+                    if (!match(RIGHT_BRACKET)) continue;
+                    close();
+                } else {
+                    pushOperand(atom(), 1);
+                }
+                expectOperand = false;
+            } else if (match(LEFT_PAREN)) {
+                open(previous(), CALL);
+                if (match(RIGHT_PAREN)) {
+                    close();
+                } else {
+                    expectOperand = true;
+                }
+            } else if (match(LEFT_BRACKET)) {
+                open(previous(), INDEX);
+                expectOperand = true;
+            } else if (binaryLevels[peek().type.ordinal()] >= 0) {
+                int level = binaryLevels[peek().type.ordinal()];
+                while (operatorCount > 0 && bindsTighter(levels[operatorCount - 1], level)) {
+                    reduce();
+                }
+                pushOperator(advance(), level);
+                expectOperand = true;
+            } else if (openGroups == 0) {
+                break;
+            } else {
+                // Any other token ends the current operand of the innermost open bracket.
+                while (levels[operatorCount - 1] > ARRAY) reduce();
+                int bracket = levels[operatorCount - 1];
+                if ((bracket == CALL || bracket == ARRAY) && match(COMMA)) {
+                    if (bracket == CALL && operandCount - bases[operatorCount - 1] >= 255) {
+                        error(peek(), "Can't have more than 255 arguments.");
+                    }
+                    expectOperand = true;
+                    continue;
+                }
+                switch (bracket) {
+                    case GROUP -> consume(RIGHT_PAREN, "Expect ')' after expression.");
+                    case CALL -> consume(RIGHT_PAREN, "Expect ')' after arguments.");
+                    case INDEX -> consume(RIGHT_BRACKET, "Expect ']' after index.");
+                    default -> consume(RIGHT_BRACKET, "Expect ']' after array elements.");
+                }
+                close();
             }
         }
-        return false;
+        while (operatorCount > 0) reduce();
+        Expr expr = operands[0];
+        operands[0] = null;
+        operandCount = 0;
+        return expr;
+    }
+
+    // Whether the operator on top of the stack takes its right operand before one at this level.
+    private static boolean bindsTighter(int top, int level) {
+        if (top <= ARRAY) return false;
+        if (top > level) return true;
+        return top == level && level != ASSIGNMENT;
+    }
+
+    private void reduce() {
+        operatorCount--;
+        Token operator = operators[operatorCount];
+        int level = levels[operatorCount];
+        operators[operatorCount] = null;
+        int depth = depths[operandCount - 1];
+        Expr right = operands[--operandCount];
+        if (level == UNARY) {
+            pushOperand(new Expr.Unary(operator, right), depth + 1);
+            return;
+        }
+        depth = Math.max(depth, depths[operandCount - 1]);
+        Expr left = operands[--operandCount];
+        if (level == ASSIGNMENT) {
+            if (left instanceof Expr.Variable) {
+                pushOperand(new Expr.Assign(((Expr.Variable) left).name, right), depth + 1);
+            } else if (left instanceof Expr.Index) {
+                Expr.Index index = (Expr.Index) left;
+                pushOperand(new Expr.IndexSet(index.object, index.bracket, index.index, right),
+                        depth + 1);
+            } else {
+                throw error(operator, "invalid assignment expression");
+            }
+        } else {
+            pushOperand(new Expr.Binary(left, operator, right), depth + 1);
+        }
+    }
+
+    private void open(Token bracket, int level) {
+        pushOperator(bracket, level);
+        bases[operatorCount - 1] = operandCount;
+        openGroups++;
+    }
+
+    // Folds the contents of the innermost bracket, which previous() has just closed, into one
+    // operand. A call or an index also takes the callee or array below its contents off the stack.
+    private void close() {
+        operatorCount--;
+        Token bracket = operators[operatorCount];
+        int level = levels[operatorCount];
+        int start = bases[operatorCount];
+        operators[operatorCount] = null;
+        openGroups--;
+        int depth = 0;
+        for (int i = start; i < operandCount; i++) {
+            depth = Math.max(depth, depths[i]);
+        }
+        Expr expr = switch (level) {
+            case GROUP -> new Expr.Grouping(operands[start]);
+            case ARRAY -> new Expr.ArrayLiteral(bracket, contents(start));
+            case CALL -> new Expr.Call(operands[start - 1], previous(), contents(start));
+            default -> new Expr.Index(operands[start - 1], bracket, operands[start]);
+        };
+        if (level == CALL || level == INDEX) {
+            start--;
+            depth = Math.max(depth, depths[start]);
+        }
+        Arrays.fill(operands, start, operandCount, null);
+        operandCount = start;
+        pushOperand(expr, depth + 1);
+    }
+
+    private List<Expr> contents(int start) {
+        List<Expr> contents = new ArrayList<>(operandCount - start);
+        for (int i = start; i < operandCount; i++) {
+            contents.add(operands[i]);
+        }
+        return contents;
+    }
+
+    private void pushOperator(Token operator, int level) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+            levels = Arrays.copyOf(levels, operatorCount * 2);
+            bases = Arrays.copyOf(bases, operatorCount * 2);
+        }
+        operators[operatorCount] = operator;
+        levels[operatorCount] = level;
+        operatorCount++;
+    }
+
+    private void pushOperand(Expr operand, int depth) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+            depths = Arrays.copyOf(depths, operandCount * 2);
+        }
+        operands[operandCount] = operand;
+        depths[operandCount] = depth;
+        operandCount++;
+        if (depth > maxDepth) maxDepth = depth;
+    }
+
+    private boolean match(TokenType type) {
+        if (!check(type)) return false;
+        advance();
+        return true;
+    }
+
+    // A second fixed-arity overload rather than varargs, which would allocate an array per call.
+    private boolean match(TokenType first, TokenType second) {
+        TokenType type = peek().type;
+        if (type != first && type != second) return false;
+        advance();
+        return true;
     }
 
     private boolean check(TokenType type) {
@@ -190,11 +672,24 @@ public class Parser {
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
     List<Stmt> parse() {
+        LoxEvents.Parse event = new LoxEvents.Parse();
+        event.begin();
+        List<Stmt> statements = parseStatements();
+        event.end();
+        if (event.shouldCommit()) {
+            event.tokenCount = tokens.size();
+            event.nodeCount = LoxEvents.countNodes(statements);
+            event.commit();
+        }
+        return statements;
+    }
+
+    private List<Stmt> parseStatements() {
         try {
             List<Stmt> statements = new ArrayList<>();
             while (!isAtEnd()) {
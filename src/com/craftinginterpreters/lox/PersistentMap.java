@@ -0,0 +1,138 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * An immutable map from names to values, stored as a hash array mapped trie. {@link #put} returns a
+ * new map that shares every node off the path to the changed entry with this one, so a copy costs
+ * nothing and each change costs a few small array copies.
+ *
+ * <p>Each level of the trie consumes five bits of the key's hash. A node keeps a bitmap of the
+ * branches it has and a packed array holding only those, two slots per branch: a key and its value,
+ * or null and the child node for keys that share the branch. Keys whose hashes are equal in all 32
+ * bits end up together in a node past the last level, which is searched linearly.
+ */
+final class PersistentMap<V> {
+  private static final int BITS = 5;
+  private static final PersistentMap<?> EMPTY = new PersistentMap<>(new Node(0, new Object[0]));
+
+  private final Node root;
+
+  private PersistentMap(Node root) {
+    this.root = root;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <V> PersistentMap<V> empty() {
+    return (PersistentMap<V>) EMPTY;
+  }
+
+  private static final class Node {
+    final int bitmap;
+    final Object[] slots;
+
+    Node(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  V get(String key) {
+    int hash = hash(key);
+    Node node = root;
+    for (int shift = 0; shift < Integer.SIZE; shift += BITS) {
+      int bit = bit(hash, shift);
+      if ((node.bitmap & bit) == 0) return null;
+      int index = index(node.bitmap, bit);
+      Object found = node.slots[index];
+      if (found != null) return key.equals(found) ? (V) node.slots[index + 1] : null;
+      node = (Node) node.slots[index + 1];
+    }
+    for (int i = 0; i < node.slots.length; i += 2) {
+      if (key.equals(node.slots[i])) return (V) node.slots[i + 1];
+    }
+    return null;
+  }
+
+  PersistentMap<V> put(String key, V value) {
+    Node updated = put(root, 0, hash(key), key, value);
+    return updated == root ? this : new PersistentMap<>(updated);
+  }
+
+  private static Node put(Node node, int shift, int hash, String key, Object value) {
+    if (shift >= Integer.SIZE) return putCollision(node, key, value);
+    int bit = bit(hash, shift);
+    int index = index(node.bitmap, bit);
+    if ((node.bitmap & bit) == 0) {
+      Object[] slots = new Object[node.slots.length + 2];
+      System.arraycopy(node.slots, 0, slots, 0, index);
+      slots[index] = key;
+      slots[index + 1] = value;
+      System.arraycopy(node.slots, index, slots, index + 2, node.slots.length - index);
+      return new Node(node.bitmap | bit, slots);
+    }
+    Object found = node.slots[index];
+    if (found == null) {
+      Node child = (Node) node.slots[index + 1];
+      Node updated = put(child, shift + BITS, hash, key, value);
+      return updated == child ? node : with(node, index, null, updated);
+    }
+    if (key.equals(found)) {
+      return node.slots[index + 1] == value ? node : with(node, index, key, value);
+    }
+    String other = (String) found;
+    Node child =
+        pair(shift + BITS, hash(other), other, node.slots[index + 1], hash, key, value);
+    return with(node, index, null, child);
+  }
+
+  // A node holding just two entries whose hashes agree below shift.
+  private static Node pair(
+      int shift, int hash1, String key1, Object value1, int hash2, String key2, Object value2) {
+    if (shift >= Integer.SIZE) return new Node(0, new Object[] {key1, value1, key2, value2});
+    int bit1 = bit(hash1, shift);
+    int bit2 = bit(hash2, shift);
+    if (bit1 == bit2) {
+      Node child = pair(shift + BITS, hash1, key1, value1, hash2, key2, value2);
+      return new Node(bit1, new Object[] {null, child});
+    }
+    // Branches are packed in bit order; the top bit makes a plain comparison wrong.
+    Object[] slots = Integer.compareUnsigned(bit1, bit2) < 0
+        ? new Object[] {key1, value1, key2, value2}
+        : new Object[] {key2, value2, key1, value1};
+    return new Node(bit1 | bit2, slots);
+  }
+
+  private static Node putCollision(Node node, String key, Object value) {
+    for (int i = 0; i < node.slots.length; i += 2) {
+      if (key.equals(node.slots[i])) {
+        return node.slots[i + 1] == value ? node : with(node, i, key, value);
+      }
+    }
+    Object[] slots = new Object[node.slots.length + 2];
+    System.arraycopy(node.slots, 0, slots, 0, node.slots.length);
+    slots[node.slots.length] = key;
+    slots[node.slots.length + 1] = value;
+    return new Node(0, slots);
+  }
+
+  private static Node with(Node node, int index, Object key, Object value) {
+    Object[] slots = node.slots.clone();
+    slots[index] = key;
+    slots[index + 1] = value;
+    return new Node(node.bitmap, slots);
+  }
+
+  // Spreads the high bits down, since short names tend to differ only in their low bits.
+  private static int hash(String key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & ((1 << BITS) - 1));
+  }
+
+  private static int index(int bitmap, int bit) {
+    return 2 * Integer.bitCount(bitmap & (bit - 1));
+  }
+}
@@ -2,8 +2,16 @@ package com.craftinginterpreters.lox;
 
 public class RuntimeError extends RuntimeException {
     final Token token;
+    // Set by the innermost statement the error leaves when nodes are shared between statements, since
+    // the token may then be another statement's. Zero when the token's line is the one to report.
+    int statementLine = 0;
+
     RuntimeError(Token token, String message) {
         super(message);
         this.token = token;
     }
+
+    int line() {
+        return statementLine > 0 ? statementLine : token.line;
+    }
 }
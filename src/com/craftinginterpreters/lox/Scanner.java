@@ -3,48 +3,170 @@ package com.craftinginterpreters.lox;
 import static com.craftinginterpreters.lox.TokenType.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Scanner {
   private final String source;
-  private static final Map<String, TokenType> keywords;
+  private final ErrorReporter reporter;
   private final List<Token> tokens = new ArrayList<>();
   private int start = 0;
   private int current = 0;
   private int line = 1;
 
+  // What an ASCII character can start. Anything outside ASCII is OTHER.
+  private static final byte OTHER = 0;
+  private static final byte SPACE = 1;
+  private static final byte NEWLINE = 2;
+  private static final byte DIGIT = 3;
+  private static final byte ALPHA = 4;
+  private static final byte SINGLE = 5;
+  // A token of its own, or of two characters when followed by '='.
+  private static final byte EQUAL_PAIR = 6;
+  private static final byte SLASH_CHAR = 7;
+  private static final byte QUOTE = 8;
+
+  private static final byte[] classes = new byte[128];
+  private static final TokenType[] singles = new TokenType[128];
+  private static final TokenType[] withEqual = new TokenType[128];
+  // Lexemes of the tokens whose text is always the same, indexed by ordinal, so they share a string
+  // instead of each taking a substring.
+  private static final String[] fixedLexemes = new String[TokenType.values().length];
+
+  // Keywords hashed on their first and last characters and length. No two of them share a slot, so
+  // one comparison against the source tells whether an identifier is a keyword.
+  private static final int KEYWORD_SLOTS = 32;
+  private static final String[] keywordText = new String[KEYWORD_SLOTS];
+  private static final TokenType[] keywordTypes = new TokenType[KEYWORD_SLOTS];
+
   static {
-    keywords = new HashMap<String, TokenType>();
-    keywords.put("and", AND);
-    keywords.put("class", CLASS);
-    keywords.put("else", ELSE);
-    keywords.put("false", FALSE);
-    keywords.put("for", FOR);
-    keywords.put("fun", FUN);
-    keywords.put("if", IF);
-    keywords.put("nil", NIL);
-    keywords.put("or", OR);
-    keywords.put("return", RETURN);
-    keywords.put("super", SUPER);
-    keywords.put("this", THIS);
-    keywords.put("true", TRUE);
-    keywords.put("var", VAR);
-    keywords.put("while", WHILE);
-    keywords.put("print", PRINT);
+    classes[' '] = SPACE;
+    classes['\r'] = SPACE;
+    classes['\t'] = SPACE;
+    classes['\n'] = NEWLINE;
+    for (char c = '0'; c <= '9'; c++) classes[c] = DIGIT;
+    for (char c = 'a'; c <= 'z'; c++) classes[c] = ALPHA;
+    for (char c = 'A'; c <= 'Z'; c++) classes[c] = ALPHA;
+    classes['_'] = ALPHA;
+    classes['/'] = SLASH_CHAR;
+    classes['"'] = QUOTE;
+
+    single('(', LEFT_PAREN);
+    single(')', RIGHT_PAREN);
+    single('{', LEFT_BRACE);
+    single('}', RIGHT_BRACE);
+    single('[', LEFT_BRACKET);
+    single(']', RIGHT_BRACKET);
+    single(',', COMMA);
+    single('.', DOT);
+    single('-', MINUS);
+    single('+', PLUS);
+    single(';', SEMICOLON);
+    single('*', STAR);
+    fixedLexemes[SLASH.ordinal()] = "/";
+
+    equalPair('!', BANG, BANG_EQUAL);
+    equalPair('=', EQUAL, EQUAL_EQUAL);
+    equalPair('>', GREATER, GREATER_EQUAL);
+    equalPair('<', LESS, LESS_EQUAL);
+
+    keyword("and", AND);
+    keyword("class", CLASS);
+    keyword("else", ELSE);
+    keyword("false", FALSE);
+    keyword("for", FOR);
+    keyword("fun", FUN);
+    keyword("if", IF);
+    keyword("nil", NIL);
+    keyword("or", OR);
+    keyword("return", RETURN);
+    keyword("super", SUPER);
+    keyword("this", THIS);
+    keyword("true", TRUE);
+    keyword("var", VAR);
+    keyword("while", WHILE);
+    keyword("print", PRINT);
+  }
+
+  private static void single(char c, TokenType type) {
+    classes[c] = SINGLE;
+    singles[c] = type;
+    fixedLexemes[type.ordinal()] = String.valueOf(c);
+  }
+
+  private static void equalPair(char c, TokenType alone, TokenType paired) {
+    classes[c] = EQUAL_PAIR;
+    singles[c] = alone;
+    withEqual[c] = paired;
+    fixedLexemes[alone.ordinal()] = String.valueOf(c);
+    fixedLexemes[paired.ordinal()] = c + "=";
+  }
+
+  private static void keyword(String text, TokenType type) {
+    int slot = keywordSlot(text.charAt(0), text.charAt(text.length() - 1), text.length());
+    if (keywordText[slot] != null) {
+      throw new IllegalStateException(text + " collides with " + keywordText[slot]);
+    }
+    keywordText[slot] = text;
+    keywordTypes[slot] = type;
+    fixedLexemes[type.ordinal()] = text;
+  }
+
+  private static int keywordSlot(char first, char last, int length) {
+    return (first + 5 * last + length) & (KEYWORD_SLOTS - 1);
   }
 
   Scanner(String source) {
+    this(source, new ErrorReporter());
+  }
+
+  Scanner(String source, ErrorReporter reporter) {
     this.source = source;
+    this.reporter = reporter;
+  }
+
+  /**
+   * A scanner that resumes at {@code offset} on {@code line}, for rescanning part of an edited
+   * source with {@link #scanNext}. The offset must be where a token, whitespace or a comment begins.
+   */
+  Scanner(String source, ErrorReporter reporter, int offset, int line) {
+    this(source, reporter);
+    this.current = offset;
+    this.line = line;
+  }
+
+  /**
+   * Scans up to and including the next token, or returns the EOF token at the end of the source.
+   * {@link #tokenStart} is then the offset the token starts at.
+   */
+  Token scanNext() {
+    tokens.clear();
+    while (!isAtEnd()) {
+      start = current;
+      scanToken();
+      if (!tokens.isEmpty()) return tokens.get(0);
+    }
+    start = current;
+    return new Token(EOF, "", null, line);
+  }
+
+  int tokenStart() {
+    return start;
   }
 
   List<Token> scanTokens() {
+    LoxEvents.Scan event = new LoxEvents.Scan();
+    event.begin();
     while (!isAtEnd()) {
       start = current;
       scanToken();
     }
     tokens.add(new Token(EOF, "", null, line));
+    event.end();
+    if (event.shouldCommit()) {
+      event.sourceLength = source.length();
+      event.tokenCount = tokens.size();
+      event.commit();
+    }
     return tokens;
   }
 
@@ -52,10 +174,6 @@ public class Scanner {
     return current >= source.length();
   }
 
-  private char advance() {
-    return source.charAt(current++);
-  }
-
   private void addToken(TokenType type) {
     addToken(type, null);
   }
@@ -65,7 +183,11 @@ public class Scanner {
     tokens.add(new Token(type, text, literal, line));
   }
 
-  private boolean match(Character expected) {
+  private void addFixed(TokenType type) {
+    tokens.add(new Token(type, fixedLexemes[type.ordinal()], null, line));
+  }
+
+  private boolean match(char expected) {
     if (isAtEnd()) return false;
     if (source.charAt(current) != expected) return false;
 
@@ -73,137 +195,125 @@ public class Scanner {
     return true;
   }
 
-  private char peek() {
-    if (isAtEnd()) return '\0';
-    return source.charAt(current);
+  private static byte classOf(char c) {
+    return c < 128 ? classes[c] : OTHER;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isAlphaNumeric(char c) {
+    byte kind = classOf(c);
+    return kind == ALPHA || kind == DIGIT;
+  }
+
+  // Skips a whole run of whitespace at once, counting the newlines in it.
+  private void skipWhitespace() {
+    int length = source.length();
+    while (current < length) {
+      char c = source.charAt(current);
+      if (c == '\n') {
+        line++;
+      } else if (classOf(c) != SPACE) {
+        break;
+      }
+      current++;
+    }
   }
 
   private void string() {
-    while (peek() != '"' && !isAtEnd()) {
-      if (peek() == '\n') line++;
-      advance();
+    int end = source.indexOf('"', current);
+    int stop = end < 0 ? source.length() : end;
+    for (int i = current; i < stop; i++) {
+      if (source.charAt(i) == '\n') line++;
     }
-    if (isAtEnd()) {
-      Lox.error(line, "Unterminated string.");
+    current = stop;
+    if (end < 0) {
+      reporter.error(line, "Unterminated string.");
       return;
     }
-    advance();
+    current++;
     String value = source.substring(start + 1, current - 1);
     addToken(STRING, value);
   }
 
   private void identifier() {
-    while (isAlphaNumeric(peek())) advance();
-    String text = source.substring(start, current);
-    TokenType type = keywords.get(text);
+    int length = source.length();
+    while (current < length && isAlphaNumeric(source.charAt(current))) current++;
+    TokenType type = keyword();
     if (type == null) {
       addToken(IDENTIFIER);
-    }
-    else {
-      addToken(type);
+    } else {
+      addFixed(type);
     }
   }
 
-  private boolean isDigit(char c) {
-    return c >= '0' && c <= '9';
-  }
-
-  private boolean isAlpha(char c) {
-    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
-  }
-
-  private boolean isAlphaNumeric(char c) {
-    return isDigit(c) || isAlpha(c);
-  }
-
-  private char peekNext() {
-    if (current + 1 > source.length()) return '\0';
-    return source.charAt(current + 1);
+  private TokenType keyword() {
+    int length = current - start;
+    int slot = keywordSlot(source.charAt(start), source.charAt(current - 1), length);
+    String text = keywordText[slot];
+    if (text == null || text.length() != length) return null;
+    if (!source.regionMatches(start, text, 0, length)) return null;
+    return keywordTypes[slot];
   }
 
+  // Integers of up to 15 digits are exact in a double, so they are accumulated directly instead of
+  // going through Double.parseDouble.
   private void number() {
-    while (isDigit(peek())) advance();
-    if (peek() == '.' && isDigit(peekNext())) {
-      advance();
-      while (isDigit(peek())) advance();
+    int length = source.length();
+    long whole = source.charAt(start) - '0';
+    while (current < length && isDigit(source.charAt(current))) {
+      whole = whole * 10 + (source.charAt(current++) - '0');
+    }
+    boolean fraction = current + 1 < length
+        && source.charAt(current) == '.' && isDigit(source.charAt(current + 1));
+    if (fraction) {
+      current++;
+      while (current < length && isDigit(source.charAt(current))) current++;
     }
 
-    addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+    String text = source.substring(start, current);
+    double value = !fraction && text.length() <= 15 ? whole : Double.parseDouble(text);
+    tokens.add(new Token(NUMBER, text, value, line));
   }
 
   private void scanToken() {
-    char c = advance();
-    switch (c) {
-      case '(':
-        addToken(LEFT_PAREN);
+    char c = source.charAt(current++);
+    switch (classOf(c)) {
+      case SINGLE:
+        addFixed(singles[c]);
         break;
-      case ')':
-        addToken(RIGHT_PAREN);
+      case EQUAL_PAIR:
+        addFixed(match('=') ? withEqual[c] : singles[c]);
         break;
-      case '{':
-        addToken(LEFT_BRACE);
-        break;
-      case '}':
-        addToken(RIGHT_BRACE);
-        break;
-      case ',':
-        addToken(COMMA);
-        break;
-      case '.':
-        addToken(DOT);
-        break;
-      case '-':
-        addToken(MINUS);
-        break;
-      case '+':
-        addToken(PLUS);
-        break;
-      case ';':
-        addToken(SEMICOLON);
-        break;
-      case '*':
-        addToken(STAR);
-        break;
-      case '!':
-        addToken(match('=') ? BANG_EQUAL : BANG);
-        break;
-      case '>':
-        addToken(match('=') ? GREATER_EQUAL : GREATER);
-        break;
-      case '<':
-        addToken(match('=') ? LESS_EQUAL : LESS);
-        break;
-      case '=':
-        addToken(match('=') ? EQUAL_EQUAL : EQUAL);
-        break;
-      case '/':
+      case SLASH_CHAR:
         if (match('/')) {
-          while (peek() != '\n' && !isAtEnd()) advance();
+          // The newline ending the comment is left to count as whitespace.
+          int end = source.indexOf('\n', current);
+          current = end < 0 ? source.length() : end;
         } else {
-          addToken(SLASH);
+          addFixed(SLASH);
         }
         break;
-      case ' ':
-      case '\r':
-      case '\t':
-        // ignore white space
+      case SPACE:
+        skipWhitespace();
         break;
-
-      case '\n':
+      case NEWLINE:
         line++;
+        skipWhitespace();
         break;
-
-      case '"':
+      case QUOTE:
         string();
         break;
+      case DIGIT:
+        number();
+        break;
+      case ALPHA:
+        identifier();
+        break;
       default:
-        if (isDigit(c)) {
-          number();
-        } else if (isAlpha(c)) {
-          identifier();
-        } else {
-          Lox.error(line, "Unexpected character.");
-        }
+        reporter.error(line, "Unexpected character.");
         break;
     }
   }
@@ -0,0 +1,31 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * The tokens a parsed statement was built from, as the half-open index range [start, end) into the
+ * token list, with the spans of the statements directly nested in it: a block's statements or a
+ * loop's body.
+ */
+class StatementSpan {
+  Stmt stmt;
+  int start;
+  int end;
+  final List<StatementSpan> children;
+
+  StatementSpan(Stmt stmt, int start, int end, List<StatementSpan> children) {
+    this.stmt = stmt;
+    this.start = start;
+    this.end = end;
+    this.children = children;
+  }
+
+  /** Moves this span and everything nested in it by {@code delta} tokens. */
+  void shift(int delta) {
+    start += delta;
+    end += delta;
+    for (StatementSpan child : children) {
+      child.shift(delta);
+    }
+  }
+}
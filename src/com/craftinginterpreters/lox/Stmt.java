@@ -11,14 +11,26 @@ abstract class Stmt {
     R visitPrintExprStmt(PrintExpr stmt);
 
     R visitVarStmt(Var stmt);
+
+    R visitWhileStmt(While stmt);
+
+    R visitForStmt(For stmt);
+  }
+
+  final Token first;
+
+  Stmt(Token first) {
+    this.first = first;
   }
 
   static class Block extends Stmt {
-    Block(List<Stmt> statements) {
+    Block(Token first, List<Stmt> statements) {
+      super(first);
       this.statements = statements;
     }
 
     final List<Stmt> statements;
+    Parser.Deferred deferred;
 
     @Override
     <R> R accept(Visitor<R> visitor) {
@@ -27,7 +39,8 @@ abstract class Stmt {
   }
 
   static class Expression extends Stmt {
-    Expression(Expr expr) {
+    Expression(Token first, Expr expr) {
+      super(first);
       this.expr = expr;
     }
 
@@ -40,7 +53,8 @@ abstract class Stmt {
   }
 
   static class PrintExpr extends Stmt {
-    PrintExpr(Expr expr) {
+    PrintExpr(Token first, Expr expr) {
+      super(first);
       this.expr = expr;
     }
 
@@ -53,7 +67,8 @@ abstract class Stmt {
   }
 
   static class Var extends Stmt {
-    Var(Token name, Expr initializer) {
+    Var(Token first, Token name, Expr initializer) {
+      super(first);
       this.name = name;
       this.initializer = initializer;
     }
@@ -67,5 +82,41 @@ abstract class Stmt {
     }
   }
 
+  static class While extends Stmt {
+    While(Token first, Expr condition, Stmt body) {
+      super(first);
+      this.condition = condition;
+      this.body = body;
+    }
+
+    final Expr condition;
+    final Stmt body;
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitWhileStmt(this);
+    }
+  }
+
+  static class For extends Stmt {
+    For(Token first, Stmt initializer, Expr condition, Expr increment, Stmt body) {
+      super(first);
+      this.initializer = initializer;
+      this.condition = condition;
+      this.increment = increment;
+      this.body = body;
+    }
+
+    final Stmt initializer;
+    final Expr condition;
+    final Expr increment;
+    final Stmt body;
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForStmt(this);
+    }
+  }
+
   abstract <R> R accept(Visitor<R> visitor);
 }
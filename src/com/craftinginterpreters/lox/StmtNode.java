@@ -0,0 +1,16 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+sealed interface StmtNode {
+  Token first();
+
+  record Block(Token first, List<StmtNode> statements) implements StmtNode {}
+  record Expression(Token first, ExprNode expr) implements StmtNode {}
+  record PrintExpr(Token first, ExprNode expr) implements StmtNode {}
+  record Var(Token first, Token name, ExprNode initializer) implements StmtNode {}
+  record While(Token first, ExprNode condition, StmtNode body) implements StmtNode {}
+  record For(
+      Token first, StmtNode initializer, ExprNode condition, ExprNode increment, StmtNode body)
+      implements StmtNode {}
+}
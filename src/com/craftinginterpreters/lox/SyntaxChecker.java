@@ -0,0 +1,156 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Scans and parses every {@code .lox} file under a directory without executing anything. Files are
+ * checked in parallel on a work-stealing pool, each with its own {@link ErrorReporter}, and the
+ * results are written as one JSON object per line, in path order.
+ */
+class SyntaxChecker {
+  private final ForkJoinPool pool;
+
+  SyntaxChecker(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  static class Diagnostic {
+    Diagnostic(int line, String where, String message) {
+      this.line = line;
+      this.where = where;
+      this.message = message;
+    }
+
+    final int line;
+    final String where;
+    final String message;
+  }
+
+  static class Result {
+    Result(Path file, List<Diagnostic> diagnostics, String ioError) {
+      this.file = file;
+      this.diagnostics = diagnostics;
+      this.ioError = ioError;
+    }
+
+    final Path file;
+    final List<Diagnostic> diagnostics;
+    final String ioError;
+
+    boolean ok() {
+      return ioError == null && diagnostics.isEmpty();
+    }
+  }
+
+  private static class CollectingReporter extends ErrorReporter {
+    final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    @Override
+    void report(int line, String where, String message) {
+      diagnostics.add(new Diagnostic(line, where, message));
+      hadError = true;
+    }
+  }
+
+  List<Result> checkTree(Path root) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(root)) {
+      files =
+          paths
+              .filter(Files::isRegularFile)
+              .filter(path -> path.toString().endsWith(".lox"))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+
+    List<ForkJoinTask<Result>> tasks = new ArrayList<>(files.size());
+    for (Path file : files) {
+      tasks.add(pool.submit(() -> checkFile(file)));
+    }
+    List<Result> results = new ArrayList<>(tasks.size());
+    for (ForkJoinTask<Result> task : tasks) {
+      results.add(task.join());
+    }
+    return results;
+  }
+
+  static Result checkFile(Path file) {
+    String source;
+    try {
+      source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+    } catch (IOException | UncheckedIOException e) {
+      return new Result(file, List.of(), String.valueOf(e.getMessage()));
+    }
+    return new Result(file, check(source), null);
+  }
+
+  static List<Diagnostic> check(String source) {
+    CollectingReporter reporter = new CollectingReporter();
+    List<Token> tokens = new Scanner(source, reporter).scanTokens();
+    Parser parser = new Parser(tokens, reporter);
+    try {
+      parser.parse();
+    } catch (StackOverflowError e) {
+      // Nesting too deep for the recursive parser fails this file, not the whole check.
+      int at = Math.min(parser.position(), tokens.size() - 1);
+      reporter.error(tokens.get(at), "Nesting too deep to parse.");
+    }
+    return reporter.diagnostics;
+  }
+
+  static void write(Result result, PrintStream out) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("{\"file\":");
+    quote(result.file.toString(), builder);
+    builder.append(",\"ok\":").append(result.ok());
+    if (result.ioError != null) {
+      builder.append(",\"ioError\":");
+      quote(result.ioError, builder);
+    }
+    builder.append(",\"diagnostics\":[");
+    for (int i = 0; i < result.diagnostics.size(); i++) {
+      Diagnostic diagnostic = result.diagnostics.get(i);
+      if (i > 0) builder.append(',');
+      builder.append("{\"line\":").append(diagnostic.line).append(",\"where\":");
+      quote(diagnostic.where.trim(), builder);
+      builder.append(",\"message\":");
+      quote(diagnostic.message, builder);
+      builder.append('}');
+    }
+    builder.append("]}");
+    out.println(builder);
+  }
+
+  private static void quote(String text, StringBuilder builder) {
+    builder.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"' -> builder.append("\\\"");
+        case '\\' -> builder.append("\\\\");
+        case '\n' -> builder.append("\\n");
+        case '\r' -> builder.append("\\r");
+        case '\t' -> builder.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+        }
+      }
+    }
+    builder.append('"');
+  }
+}
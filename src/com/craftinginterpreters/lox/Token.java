@@ -4,7 +4,8 @@ public class Token {
   final TokenType type;
   final String lexeme;
   final Object literal;
-  final int line;
+  // Not final so incremental reparsing can shift the lines of tokens it reuses below an edit.
+  int line;
 
   Token(TokenType type, String lexeme, Object literal, int line) {
     this.type = type;
@@ -8,34 +8,87 @@ import java.util.List;
 
 public class GenerateAst {
   public static void main(String[] args) throws IOException {
-    if (args.length != 1) {
-      System.err.println("Usage: generate_ast <output directory>");
+    boolean sealed = args.length == 2 && args[0].equals("--sealed");
+    if (args.length != 1 && !sealed) {
+      System.err.println("Usage: generate_ast [--sealed] <output directory>");
       System.exit(64);
     }
-    String outputDir = args[0];
-    defineAst(
-        outputDir,
-        "Expr",
+    String outputDir = args[args.length - 1];
+    List<String> exprTypes =
         Arrays.asList(
             "Binary   : Expr left, Token operator, Expr right",
             "Grouping : Expr expression",
             "Literal  : Object value",
             "Unary    : Token operator, Expr right",
-            "Assign    : Token name, Expr value",
-            "Variable    : Token name"));
-
-    defineAst(
-        outputDir,
-        "Stmt",
+            "Assign    : Token name, Expr value ; Environment.Cell cell",
+            "Variable    : Token name ; Environment.Cell cell",
+            "VarLiteral  : Token name, Token operator, Object value ; Environment.Cell cell",
+            "VarVar      : Token left, Token operator, Token right"
+                + " ; Environment.Cell leftCell, Environment.Cell rightCell",
+            "AddAssign   : Token name, Token source, Token operator, Object value"
+                + " ; Environment.Cell cell",
+            "Call        : Expr callee, Token paren, List<Expr> arguments ; HostFunction function",
+            "ArrayLiteral : Token bracket, List<Expr> elements",
+            "Index       : Expr object, Token bracket, Expr index",
+            "IndexSet    : Expr object, Token bracket, Expr index, Expr value",
+            "Memo        : Expr expression, List<Token> reads"
+                + " ; Object value, Environment.Cell[] cells, long[] versions, long hits, long misses");
+    List<String> stmtTypes =
         Arrays.asList(
-            "Block   : List<Stmt> statements",
+            "Block   : List<Stmt> statements ; Parser.Deferred deferred",
             "Expression   : Expr expr",
             "PrintExpr  : Expr expr",
-            "Var  : Token name, Expr initializer"));
+            "Var  : Token name, Expr initializer",
+            "While  : Expr condition, Stmt body",
+            "For  : Stmt initializer, Expr condition, Expr increment, Stmt body");
+
+    // Every statement keeps its first token, whose line errors raised between statements report.
+    String stmtBaseField = "Token first";
+
+    if (sealed) {
+      defineSealedAst(outputDir, "Expr", exprTypes, null);
+      defineSealedAst(outputDir, "Stmt", stmtTypes, stmtBaseField);
+    } else {
+      defineAst(outputDir, "Expr", exprTypes, null);
+      defineAst(outputDir, "Stmt", stmtTypes, stmtBaseField);
+    }
   }
 
-  private static void defineAst(String outputDir, String baseName, List<String> types)
-      throws IOException {
+  // With --sealed, each hierarchy is instead a sealed interface named <base>Node whose node types
+  // are records, so every node class is final and the set of them is closed. Records are
+  // immutable, so cache fields are left out. A base field becomes every record's first component,
+  // which the interface declares as an accessor.
+  private static void defineSealedAst(
+      String outputDir, String baseName, List<String> types, String baseField) throws IOException {
+    String interfaceName = baseName + "Node";
+    String path = outputDir + "/" + interfaceName + ".java";
+    PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
+
+    writer.println("package com.craftinginterpreters.lox;");
+    writer.println();
+    writer.println("import java.util.List;");
+    writer.println();
+    writer.println("sealed interface " + interfaceName + " {");
+    if (baseField != null) {
+      writer.println("  " + baseField + "();");
+      writer.println();
+    }
+    for (String type : types) {
+      String typeName = type.split(":")[0].trim();
+      String fields = type.split(":")[1].split(";")[0].trim();
+      if (baseField != null) fields = baseField + ", " + fields;
+      // Children refer to the sealed hierarchies too.
+      fields = fields.replaceAll("\\bExpr\\b", "ExprNode").replaceAll("\\bStmt\\b", "StmtNode");
+      writer.println(
+          "  record " + typeName + "(" + fields + ") implements " + interfaceName + " {}");
+    }
+    writer.println("}");
+    writer.close();
+  }
+
+  // A base field is declared once in the base class, and every node's constructor takes it first.
+  private static void defineAst(
+      String outputDir, String baseName, List<String> types, String baseField) throws IOException {
     String path = outputDir + "/" + baseName + ".java";
     PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
 
@@ -46,10 +99,20 @@ public class GenerateAst {
 
     defineVisitor(writer, baseName, types);
 
+    if (baseField != null) {
+      String name = baseField.split(" ")[1];
+      writer.println();
+      writer.println("    final " + baseField + ";");
+      writer.println();
+      writer.println("    " + baseName + "(" + baseField + ") {");
+      writer.println("        this." + name + " = " + name + ";");
+      writer.println("    }");
+    }
+
     for (String type : types) {
       String typeName = type.split(":")[0].trim();
       String fieldNames = type.split(":")[1].trim();
-      defineType(typeName, baseName, fieldNames, writer);
+      defineType(typeName, baseName, baseField, fieldNames, writer);
     }
 
     writer.println();
@@ -77,11 +140,20 @@ public class GenerateAst {
     writer.println("    }");
   }
 
+  // Fields after a ';' are mutable per-node caches: they are not constructor parameters.
   private static void defineType(
-      String typeName, String baseName, String fieldNames, PrintWriter writer) {
+      String typeName, String baseName, String baseField, String fieldList, PrintWriter writer) {
+    String fieldNames = fieldList.split(";")[0].trim();
+    String[] cacheFields =
+        fieldList.contains(";") ? fieldList.split(";")[1].trim().split(", ") : new String[0];
     writer.println();
     writer.println("static class " + typeName + " extends " + baseName + " {");
-    writer.println("       " + typeName + "( " + fieldNames + " ) {");
+    if (baseField != null) {
+      writer.println("       " + typeName + "( " + baseField + ", " + fieldNames + " ) {");
+      writer.println("            super(" + baseField.split(" ")[1] + ");");
+    } else {
+      writer.println("       " + typeName + "( " + fieldNames + " ) {");
+    }
 
     String[] fields = fieldNames.split(", ");
 
@@ -96,6 +168,9 @@ public class GenerateAst {
     for (String field : fields) {
       writer.println("      final " + field + ";");
     }
+    for (String field : cacheFields) {
+      writer.println("      " + field + ";");
+    }
 
     writer.println();
 
@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Runs every check in this source root and exits with status 1 if any of them failed. The checks
+ * live in the interpreter's package so they can reach its package-private classes, but outside
+ * {@code src}, so they are not part of the interpreter.
+ */
+class Checks {
+  public static void main(String[] args) {
+    int failures = 0;
+    failures += DeadCodeCheck.run();
+    failures += ExplicitStackCheck.run();
+    failures += HashConsCheck.run();
+    failures += IncrementalCheck.run();
+    failures += ForkCheck.run();
+    failures += ParallelCheck.run();
+    failures += SyntaxCheckerCheck.run();
+    if (failures > 0) {
+      System.out.println(failures + " failed");
+      System.exit(1);
+    }
+  }
+}
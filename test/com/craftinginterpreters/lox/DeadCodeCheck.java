@@ -0,0 +1,60 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Runs programs that shadow, redeclare and reassign variables across blocks and loops with and
+ * without dead code elimination, and fails if any of them prints something different once the
+ * eliminator has run.
+ */
+class DeadCodeCheck {
+  private static final String[] PROGRAMS = {
+      // A store to the outer variable before the block declares its own.
+      "var a = 1; { a = 5; var a = 2; print a; } print a;",
+      "var a = 1; { a = 5; var a = 2; } print a;",
+      "var a = 1; { { a = 5; } var a = 2; print a; } print a;",
+      // The local's initializer reads the outer variable.
+      "var a = 1; { a = 3; var a = a + 1; print a; }",
+      // A redeclaration in the same block is the same variable.
+      "{ var a = 1; a = 2; var a = a + 1; print a; }",
+      "var a = 1; { var a = 2; a = 3; } print a;",
+      "var i = 0; var a = 0; while (i < 3) { a = a + i; var a = 10; i = i + 1; } print a;",
+      "var a = 1; for (var a = 0; a < 2; a = a + 1) { } print a;",
+  };
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints a line per mismatch and a summary, and returns the number of mismatches. */
+  static int run() {
+    int failures = 0;
+    for (String source : PROGRAMS) {
+      List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+      String expected = run(statements);
+      String actual = run(new DeadCodeEliminator().eliminate(statements));
+      if (!expected.equals(actual)) {
+        failures++;
+        System.out.println("FAIL " + source);
+        System.out.println("  expected: " + expected.replace('\n', ' '));
+        System.out.println("  got:      " + actual.replace('\n', ' '));
+      }
+    }
+    System.out.println((PROGRAMS.length - failures) + " of " + PROGRAMS.length + " programs agree");
+    return failures;
+  }
+
+  private static String run(List<Stmt> statements) {
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(captured, true));
+    try {
+      new Interpreter().interpret(statements);
+    } finally {
+      System.setOut(stdout);
+    }
+    return captured.toString();
+  }
+}
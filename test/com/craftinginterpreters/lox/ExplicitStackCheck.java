@@ -0,0 +1,91 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Parses and runs expressions nested far deeper than recursive descent can go on the Java stack, in
+ * explicit-stack mode, and fails if any of them overflows or prints the wrong value. Ordinary
+ * programs must print the same in both modes.
+ */
+class ExplicitStackCheck {
+  private static final int DEPTH = 100_000;
+
+  private static final String[] SHALLOW = {
+      "var a = 1; var b = 2; print (a + b * 3) - -a / (b + 1);",
+      "var a = 1; var b; a = b = 3; print a + b; print !(a < b) == true;",
+      "print \"a\" + \"b\"; print -(-(1)); print 1 - 2 - 3; print 8 / 4 / 2;",
+      "print len(array(2 + len(array(3)))); print clock() > 0;",
+      "var b = [1, [2, 3], \"s\"]; b[1][0] = b[0] + 4; print b; print b[1][b[0]]; print len([]);",
+  };
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints a line per failure and a summary, and returns the number of failures. */
+  static int run() {
+    int failures = 0;
+    int checks = 0;
+    String closing = ")".repeat(DEPTH);
+    failures += check("grouping", "(".repeat(DEPTH) + "1" + closing, "1");
+    failures += check("unary", "- ".repeat(DEPTH) + "1", "1");
+    failures += check("right-nested binary", "1 + (".repeat(DEPTH) + "1" + closing,
+        String.valueOf(DEPTH + 1));
+    failures += check("left-nested binary", "0" + " + 1".repeat(DEPTH), String.valueOf(DEPTH));
+    failures += check("assignment", "a = ".repeat(DEPTH) + "1", "1");
+    failures += check(
+        "call arguments", "len(array(".repeat(DEPTH) + "1" + "))".repeat(DEPTH), "1");
+    String index = "b[".repeat(DEPTH) + "0" + "]".repeat(DEPTH);
+    failures += check("index", index, "0");
+    failures += check("index assignment target", index + " = 5", "5");
+    failures += check("index assignment value", "b[0] = ".repeat(DEPTH) + "7", "7");
+    failures += check(
+        "array literal", "len(" + "[".repeat(DEPTH) + "1" + "]".repeat(DEPTH) + ")", "1");
+    checks += 10;
+    for (String source : SHALLOW) {
+      String expected = run(source, false);
+      String actual = run(source, true);
+      if (!expected.equals(actual)) {
+        failures++;
+        System.out.println("FAIL " + source);
+        System.out.println("  recursive: " + expected.replace('\n', ' '));
+        System.out.println("  explicit:  " + actual.replace('\n', ' '));
+      }
+      checks++;
+    }
+    System.out.println((checks - failures) + " of " + checks + " explicit-stack checks pass");
+    return failures;
+  }
+
+  private static int check(String name, String expression, String expected) {
+    String actual;
+    try {
+      actual = run("var a = 0;\nvar b = [0];\nprint " + expression + ";\n", true).trim();
+    } catch (StackOverflowError e) {
+      actual = "StackOverflowError";
+    }
+    if (actual.equals(expected)) return 0;
+    System.out.println(
+        "FAIL " + name + " nested " + DEPTH + " deep: expected " + expected + ", got " + actual);
+    return 1;
+  }
+
+  private static String run(String source, boolean explicitStack) {
+    PrintStream stdout = System.out;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(captured, true));
+    try {
+      List<Token> tokens = new Scanner(source).scanTokens();
+      List<Stmt> statements = new Parser(tokens, new ErrorReporter(), explicitStack).parse();
+      if (statements == null) return "syntax error";
+      Interpreter interpreter = new Interpreter(ExecutionLimits.NONE, explicitStack);
+      interpreter.install(HostFunctions.standard());
+      interpreter.interpret(statements);
+    } finally {
+      System.setOut(stdout);
+    }
+    return captured.toString();
+  }
+}
@@ -0,0 +1,121 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Runs a script against forks of a warmed-up interpreter, and against forks of those forks, and fails
+ * if any run prints something other than a fresh interpreter that rebuilt the same state, or if the
+ * runs leave their bases changed. The same statements run against every fork, so cells cached on
+ * their nodes must not carry over from one fork to the next.
+ */
+class ForkCheck {
+  private static final String SETUP =
+      "var total = 10; var name = \"g\"; var runs = 0; var seen = -1; var a = [1, 2]; var k = 0;\n";
+  private static final String SCRIPT =
+      "total = total + k * 2;\n"
+          + "{ var local = total; total = local + 1; }\n"
+          + "var seen = k;\n"
+          + "name = name + \"!\";\n"
+          + "for (var i = 0; i < 3; i = i + 1) runs = runs + i;\n"
+          + "a = [k, total];\n"
+          + "print total; print name; print runs; print seen; print a;\n";
+  private static final String STATE = "print total; print name; print runs; print seen; print a;\n";
+  private static final int FORKS = 5;
+
+  // An interpreter prints to the System.out it was created with, so output is captured around the
+  // whole check and the buffer is cleared before each execution.
+  private static final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints a line per mismatch and a summary, and returns the number of mismatches. */
+  static int run() {
+    StringBuilder mismatches = new StringBuilder();
+    int failures = 0;
+    int checks = 0;
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    PrintStream capture = new PrintStream(captured, true);
+    System.setOut(capture);
+    System.setErr(capture);
+    try {
+      for (boolean optimize : new boolean[] {false, true}) {
+        List<Stmt> setup = parse(SETUP, optimize);
+        List<Stmt> script = parse(SCRIPT, optimize);
+        List<Stmt> state = parse(STATE, optimize);
+        String mode = optimize ? " (fused and memoized)" : "";
+
+        Interpreter base = new Interpreter();
+        execute(base, setup, 0);
+        for (int k = 1; k <= FORKS; k++) {
+          // Each fork runs once on its own and then serves as the base for forks of its own.
+          Interpreter fork = base.fork();
+          String actual = execute(fork, script, k);
+          for (int j = 1; j <= FORKS; j++) {
+            actual += execute(fork.fork(), script, k * 10 + j);
+          }
+          actual += execute(fork.fork(), state, k);
+
+          String expected = rebuild(setup, script, k, null);
+          for (int j = 1; j <= FORKS; j++) {
+            expected += rebuild(setup, script, k, script, k * 10 + j);
+          }
+          expected += rebuild(setup, script, k, state, k);
+          checks++;
+          failures += compare("fork " + k + mode, expected, actual, mismatches);
+        }
+
+        String expected = rebuild(setup, state, 0, null);
+        String actual = execute(base.fork(), state, 0);
+        checks++;
+        failures += compare("base after forks" + mode, expected, actual, mismatches);
+      }
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+    System.out.print(mismatches);
+    System.out.println((checks - failures) + " of " + checks + " forked runs agree");
+    return failures;
+  }
+
+  private static List<Stmt> parse(String source, boolean optimize) {
+    List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+    if (!optimize) return statements;
+    return new Memoizer().memoize(new Fuser().fuse(statements));
+  }
+
+  // Runs the setup and then the first script with input k in a fresh interpreter, and returns what
+  // that script printed, or runs the second script with input k2 after it and returns what it printed.
+  private static String rebuild(List<Stmt> setup, List<Stmt> first, int k, List<Stmt> second) {
+    return rebuild(setup, first, k, second, 0);
+  }
+
+  private static String rebuild(
+      List<Stmt> setup, List<Stmt> first, int k, List<Stmt> second, int k2) {
+    Interpreter interpreter = new Interpreter();
+    execute(interpreter, setup, 0);
+    String printed = execute(interpreter, first, k);
+    return second == null ? printed : execute(interpreter, second, k2);
+  }
+
+  // Sets the input k and runs the statements, returning what they printed, runtime errors included.
+  private static String execute(Interpreter interpreter, List<Stmt> statements, int k) {
+    captured.reset();
+    interpreter.defineGlobal("k", (double) k);
+    interpreter.interpret(statements);
+    return captured.toString();
+  }
+
+  private static int compare(String name, String expected, String actual, StringBuilder mismatches) {
+    if (expected.equals(actual)) return 0;
+    mismatches.append("FAIL ").append(name).append('\n')
+        .append("  rebuilt: ").append(expected.replace('\n', ' ')).append('\n')
+        .append("  forked:  ").append(actual.replace('\n', ' ')).append('\n');
+    return 1;
+  }
+}
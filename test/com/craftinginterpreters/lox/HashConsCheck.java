@@ -0,0 +1,73 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Runs programs that repeat expressions across statements and lines with and without hash-consing,
+ * and fails if sharing nodes changes what they print or the line a runtime error is reported at.
+ */
+class HashConsCheck {
+  private static final String[] PROGRAMS = {
+      // An error at a token the statement did not take from elsewhere keeps its own line.
+      "var x = 1;\nprint x + 1;\nprint x + 1 +\n  nope;\n",
+      // An error in a shared node reports the line of the statement that took it.
+      "var a = 1;\nprint -a;\na = \"s\";\nprint\n  -a;\n",
+      "var x = 1;\nprint 2 - x;\nx = \"s\";\nprint 2 - x;\n",
+      // A statement taking its own node again keeps that node's line.
+      "var x = 1;\nprint -nope\n  -\n  nope;\n",
+      // The innermost statement settles the line, not the loop around it.
+      "var i = 0;\nfor (; i < 1; i = i + 1) { }\nfor (; i < 2; i = i + 1) {\n  print -\"zz\";\n}\n",
+      "var x = 1;\nwhile (x < 2) { x = x + 1; }\nvar y = \"s\";\nwhile (x < 3) {\n  x = x + 1;\n"
+          + "  print y - 1;\n}\n",
+      "var a = [1, 2];\nprint a[0] + a[1];\nprint a[0] +\n  a[2];\n",
+  };
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints a line per mismatch and a summary, and returns the number of mismatches. */
+  static int run() {
+    int failures = 0;
+    for (String source : PROGRAMS) {
+      String expected = run(source, false);
+      String actual = run(source, true);
+      if (!expected.equals(actual)) {
+        failures++;
+        System.out.println("FAIL " + source.replace('\n', ' '));
+        System.out.println("  expected: " + expected.replace('\n', ' '));
+        System.out.println("  got:      " + actual.replace('\n', ' '));
+      }
+    }
+    System.out.println((PROGRAMS.length - failures) + " of " + PROGRAMS.length
+        + " hash-consed programs agree");
+    return failures;
+  }
+
+  // Runs the program as Lox.run does, with runtime errors captured along with the output.
+  private static String run(String source, boolean hashCons) {
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    PrintStream capture = new PrintStream(captured, true);
+    System.setOut(capture);
+    System.setErr(capture);
+    try {
+      List<Stmt> statements = new Fuser().fuse(new Parser(new Scanner(source).scanTokens()).parse());
+      Interpreter interpreter = new Interpreter();
+      interpreter.install(HostFunctions.standard());
+      if (hashCons) {
+        HashConser conser = new HashConser();
+        statements = conser.intern(statements);
+        interpreter.sharedTokenLines(conser.lines());
+      }
+      interpreter.interpret(statements);
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+    return captured.toString();
+  }
+}
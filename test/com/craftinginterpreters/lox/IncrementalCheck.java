@@ -0,0 +1,116 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Edits sources through an {@link IncrementalParser} and fails if, after any edit, its tokens, errors
+ * or program differ from a full scan and parse of the edited source. The programs are compared by
+ * running them, with a step limit in case an edit leaves a loop that never ends.
+ */
+class IncrementalCheck {
+  private static final String[] SOURCES = {
+      "print \"a\nb\"\n;\nprint nope;\n",
+      "var s = \"one\ntwo\nthree\";\n{\n  print s;\n  print -s;\n}\nprint s + \"\n\";\n",
+      "var i = 0;\nwhile (i < 3) {\n  print i;\n  i = i + 1;\n}\nprint i - \"x\";\n",
+      "// comment\nvar a = [1, 2];\nfor (var j = 0; j < 2; j = j + 1) {\n  print a[j];\n}\n",
+  };
+  private static final String[] PIECES = {
+      " ", "\n", "\"", "\"a\nb\"", ";", "{", "}", "(", ")", "1", "x", "print x;\n", "// c\n", "-",
+  };
+  private static final int EDITS = 300;
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints the first mismatch of each source and a summary, and returns the number of mismatches. */
+  static int run() {
+    int failures = 0;
+    int checks = 0;
+    // A space after a string that spans lines rescans from the string's first line.
+    checks++;
+    failures += check(SOURCES[0], new int[] {11}, new String[] {" "});
+    Random random = new Random(38);
+    for (String source : SOURCES) {
+      int[] offsets = new int[EDITS];
+      String[] edits = new String[EDITS];
+      int length = source.length();
+      for (int i = 0; i < EDITS; i++) {
+        offsets[i] = random.nextInt(length + 1);
+        edits[i] = random.nextBoolean() ? PIECES[random.nextInt(PIECES.length)] : null;
+        length += edits[i] == null ? -Math.min(1, length - offsets[i]) : edits[i].length();
+      }
+      checks++;
+      failures += check(source, offsets, edits);
+    }
+    System.out.println((checks - failures) + " of " + checks + " incremental edit sequences agree");
+    return failures;
+  }
+
+  // Applies each edit, a null edit deleting the character at its offset, and compares after each.
+  private static int check(String source, int[] offsets, String[] edits) {
+    IncrementalParser parser = new IncrementalParser(source, new Recording(), false);
+    for (int i = 0; i < edits.length; i++) {
+      String before = parser.source();
+      int removed = edits[i] == null ? Math.min(1, before.length() - offsets[i]) : 0;
+      Recording errors = new Recording();
+      List<Stmt> statements =
+          parser.edit(offsets[i], removed, edits[i] == null ? "" : edits[i], errors);
+      String actual = describe(parser.tokens(), errors, statements);
+
+      Recording fullErrors = new Recording();
+      List<Token> tokens = new Scanner(parser.source(), fullErrors).scanTokens();
+      List<Stmt> parsed = new Parser(tokens, fullErrors, false).parse();
+      String expected = describe(tokens, fullErrors, fullErrors.hadError ? null : parsed);
+      if (!actual.equals(expected)) {
+        System.out.println("FAIL edit " + (i + 1) + " of " + before.replace("\n", "\\n"));
+        System.out.println("  at " + offsets[i] + ", removing " + removed + ", inserting "
+            + (edits[i] == null ? "nothing" : edits[i].replace("\n", "\\n")));
+        System.out.println("  full:        " + expected.replace("\n", " | "));
+        System.out.println("  incremental: " + actual.replace("\n", " | "));
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  private static String describe(List<Token> tokens, Recording errors, List<Stmt> statements) {
+    StringBuilder builder = new StringBuilder();
+    for (Token token : tokens) {
+      builder.append(token.type).append('@').append(token.line).append(' ');
+    }
+    builder.append('\n').append(errors.reports);
+    if (statements != null) builder.append(execute(statements));
+    return builder.toString();
+  }
+
+  private static String execute(List<Stmt> statements) {
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    PrintStream capture = new PrintStream(captured, true);
+    System.setOut(capture);
+    System.setErr(capture);
+    try {
+      new Interpreter(new ExecutionLimits(10_000, 0, Long.MAX_VALUE)).interpret(statements);
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+    return captured.toString();
+  }
+
+  private static class Recording extends ErrorReporter {
+    final StringBuilder reports = new StringBuilder();
+
+    @Override
+    void report(int line, String where, String message) {
+      reports.append("[line ").append(line).append("] Error").append(where).append(": ")
+          .append(message).append('\n');
+      hadError = true;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs programs both sequentially and through a {@link ParallelExecutor}, many times over, and fails
+ * if a parallel run prints anything different, reports a different runtime error, or calls host
+ * functions differently. The programs call {@code note(x)}, a host function that records its
+ * argument, so a call made that a sequential run would not have made shows up.
+ */
+class ParallelCheck {
+  private static final String[] PROGRAMS = {
+      // A host call after a statement that fails, which takes a while to get there, is never made.
+      "print 1;\n{ var i = 0; while (i < 100000) i = i + 1; print nope; }\nnote(3);\nprint 4;\n",
+      "var a = 1;\nvar b = 2;\nprint a;\nb = b + a;\nprint b;\nnote(a);\nnote(b);\nprint a + b;\n",
+      "var x = 1;\nprint x;\nprint -\"s\";\nprint x + 1;\nnote(x);\n",
+      "note(1);\nvar a = array(2);\nprint len(a);\nnote(\"s\");\nnote(2);\n",
+      "var a = array(3);\na[0] = 1;\nprint a;\nvar b = a;\nb[1] = 2;\nprint a;\nnote(len(a));\n",
+      "var n = 0;\nwhile (n < 1000) n = n + 1;\nvar m = 5;\nprint m;\nnote(m);\nprint n;\n",
+  };
+  private static final int RUNS = 20;
+
+  private static final StringBuilder notes = new StringBuilder();
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints a line per mismatch and a summary, and returns the number of mismatches. */
+  static int run() {
+    int failures = 0;
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      for (String source : PROGRAMS) {
+        String expected = run(source, null);
+        for (int i = 0; i < RUNS; i++) {
+          String actual = run(source, new ParallelExecutor(pool));
+          if (!expected.equals(actual)) {
+            failures++;
+            System.out.println("FAIL " + source.replace('\n', ' '));
+            System.out.println("  sequential: " + expected.replace('\n', ' '));
+            System.out.println("  parallel:   " + actual.replace('\n', ' '));
+            break;
+          }
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    System.out.println((PROGRAMS.length - failures) + " of " + PROGRAMS.length
+        + " programs run the same in parallel");
+    return failures;
+  }
+
+  static synchronized void note(double value) {
+    notes.append("note ").append(Interpreter.stringify(value)).append('\n');
+  }
+
+  // Runs the program and returns its output, runtime error and host calls, in that order.
+  private static String run(String source, ParallelExecutor executor) {
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(output, true));
+    System.setErr(new PrintStream(errors, true));
+    synchronized (ParallelCheck.class) {
+      notes.setLength(0);
+    }
+    try {
+      List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+      Interpreter interpreter = new Interpreter();
+      interpreter.install(functions());
+      interpreter.interpret(statements, executor);
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+    synchronized (ParallelCheck.class) {
+      return output + "---\n" + errors + "---\n" + notes;
+    }
+  }
+
+  private static HostFunctions functions() {
+    try {
+      return HostFunctions.standard().register("note", MethodHandles.lookup().findStatic(
+          ParallelCheck.class, "note", MethodType.methodType(void.class, double.class)));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Checks a directory holding a file nested too deeply for the recursive parser next to ordinary
+ * files, and fails unless the deep file alone is reported with a syntax error and every other file
+ * still gets its result.
+ */
+class SyntaxCheckerCheck {
+  private static final int DEPTH = 100_000;
+
+  public static void main(String[] args) {
+    if (run() > 0) System.exit(1);
+  }
+
+  /** Prints a line per failure and a summary, and returns the number of failures. */
+  static int run() {
+    int failures = 0;
+    Path root = null;
+    try {
+      root = Files.createTempDirectory("lox-check");
+      Files.writeString(root.resolve("a.lox"), "print 1 + 2;\n");
+      String nested = "(".repeat(DEPTH) + "1" + ")".repeat(DEPTH);
+      Files.writeString(root.resolve("b.lox"), "print " + nested + ";\n");
+      Files.writeString(root.resolve("c.lox"), "print 1 +;\n");
+      Files.writeString(root.resolve("d.lox"), "var x = 3;\n");
+      List<SyntaxChecker.Result> results =
+          new SyntaxChecker(ForkJoinPool.commonPool()).checkTree(root);
+      String actual = describe(results);
+      String expected = "a.lox ok, b.lox 1 error, c.lox 1 error, d.lox ok";
+      if (!actual.equals(expected)) {
+        failures++;
+        System.out.println("FAIL expected " + expected + ", got " + actual);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (StackOverflowError e) {
+      failures++;
+      System.out.println("FAIL a deeply nested file overflowed the whole check");
+    } finally {
+      if (root != null) delete(root);
+    }
+    System.out.println((1 - failures) + " of 1 syntax check runs report every file");
+    return failures;
+  }
+
+  private static String describe(List<SyntaxChecker.Result> results) {
+    StringBuilder builder = new StringBuilder();
+    for (SyntaxChecker.Result result : results) {
+      if (builder.length() > 0) builder.append(", ");
+      builder.append(result.file.getFileName()).append(' ');
+      int errors = result.diagnostics.size();
+      builder.append(result.ok() ? "ok" : errors + (errors == 1 ? " error" : " errors"));
+    }
+    return builder.toString();
+  }
+
+  private static void delete(Path root) {
+    try (Stream<Path> paths = Files.walk(root)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}